@@ -0,0 +1,81 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.benchmark;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edworld.pdfreader4humans.BoxComponent;
+import edworld.pdfreader4humans.Component;
+import edworld.pdfreader4humans.GridComponent;
+import edworld.pdfreader4humans.MarginComponent;
+import edworld.pdfreader4humans.TextComponent;
+
+/**
+ * Each layout stage measured on its own, over the input the reader gives it
+ * for the first page of each document.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LayoutStageBenchmark {
+	@Benchmark
+	public List<GridComponent> locateGridComponents(PageState state) throws IOException {
+		return state.locator.gridComponents(state.page);
+	}
+
+	@Benchmark
+	public List<TextComponent> locateTextComponents(PageState state) throws IOException {
+		return state.locator.textComponents(state.page, state.gridComponents);
+	}
+
+	@Benchmark
+	public List<BoxComponent> detectBoxes(PageState state) {
+		return state.boxDetector.detectBoxes(state.gridComponents);
+	}
+
+	@Benchmark
+	public List<Component> groupConnectedComponents(PageState state) {
+		return state.stageReader.groups(state.containers);
+	}
+
+	@Benchmark
+	public List<MarginComponent> detectMargins(PageState state) {
+		return state.marginDetector.detectMargins(state.marginInput);
+	}
+
+	@Benchmark
+	public List<Component> smartSort(PageState state) {
+		List<Component> components = new ArrayList<Component>(state.unsortedComponents);
+		Component.smartSort(components);
+		return components;
+	}
+
+	@Benchmark
+	public String toXML(PageState state) {
+		return state.reader.toXML();
+	}
+
+	@Benchmark
+	public List<String> toTextLines(PageState state) {
+		return state.reader.toTextLines();
+	}
+
+	@Benchmark
+	public BufferedImage createPageImage(PageState state) throws IOException {
+		return state.reader.createPageImage(1, 1, Color.BLACK, Color.WHITE, false);
+	}
+}
@@ -0,0 +1,154 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pdfbox.multipdf.Splitter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import edworld.pdfreader4humans.BoxComponent;
+import edworld.pdfreader4humans.BoxDetector;
+import edworld.pdfreader4humans.Component;
+import edworld.pdfreader4humans.GridComponent;
+import edworld.pdfreader4humans.MarginComponent;
+import edworld.pdfreader4humans.MarginDetector;
+import edworld.pdfreader4humans.PDFComponentLocator;
+import edworld.pdfreader4humans.PDFPage;
+import edworld.pdfreader4humans.PDFReader;
+import edworld.pdfreader4humans.ReaderOptions;
+import edworld.pdfreader4humans.TextComponent;
+import edworld.pdfreader4humans.impl.MainBoxDetector;
+import edworld.pdfreader4humans.impl.MainMarginDetector;
+import edworld.pdfreader4humans.impl.MainPDFComponentLocator;
+import edworld.pdfreader4humans.util.ComponentArrays;
+import edworld.pdfreader4humans.util.PDFUtil;
+
+/**
+ * First page of a document together with the input of each layout stage, as
+ * the reader computes it.
+ */
+@State(Scope.Benchmark)
+public class PageState {
+	@Param({ "testcase1", "testcase2", "testcase3", "testcase4", "testcase5", "testcase6", "testcase7", "testcase8",
+			"synthetic1", "synthetic4", "synthetic16" })
+	public String document;
+	PDDocument doc;
+	PDFPage page;
+	StageLocator locator;
+	BoxDetector boxDetector;
+	MarginDetector marginDetector;
+	StageReader stageReader;
+	PDFReader reader;
+	List<GridComponent> gridComponents;
+	List<Component> containers;
+	List<? extends Component> marginInput;
+	List<Component> unsortedComponents;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		URL url = document.startsWith("synthetic")
+				? SyntheticDocument.create(Integer.parseInt(document.substring("synthetic".length())))
+				: PageState.class.getResource("/" + document + "/input.pdf");
+		doc = PDFUtil.load(url);
+		page = new PDFPage(0, doc.getPage(0), doc);
+		locator = new StageLocator();
+		boxDetector = new MainBoxDetector();
+		marginDetector = new MainMarginDetector();
+		gridComponents = locator.locateGridComponents(page);
+		List<BoxComponent> boxes = boxDetector.detectBoxes(gridComponents);
+		containers = new ArrayList<Component>();
+		containers.addAll(gridComponents);
+		containers.addAll(boxes);
+		RecordingMarginDetector recordingMarginDetector = new RecordingMarginDetector();
+		stageReader = new StageReader(url, new MainPDFComponentLocator(), boxDetector, recordingMarginDetector);
+		stageReader.getFirstLevelComponents(1);
+		marginInput = recordingMarginDetector.input;
+		unsortedComponents = stageReader.unsortedComponents;
+		reader = new PDFReader(firstPage(doc), new MainPDFComponentLocator(), boxDetector, marginDetector, 0);
+	}
+
+	/**
+	 * @return location of a copy of the document with only its first page,
+	 *         so the reader's output covers what the other benchmarks measure
+	 */
+	private URL firstPage(PDDocument doc) throws IOException {
+		File file = File.createTempFile("benchmark", ".pdf");
+		file.deleteOnExit();
+		Splitter splitter = new Splitter();
+		splitter.setEndPage(1);
+		PDDocument firstPage = splitter.split(doc).get(0);
+		try {
+			firstPage.save(file);
+		} finally {
+			firstPage.close();
+		}
+		return file.toURI().toURL();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		stageReader.close();
+		doc.close();
+	}
+
+	static class StageLocator extends MainPDFComponentLocator {
+		public List<GridComponent> gridComponents(PDFPage page) throws IOException {
+			return locateAllGridComponents(page);
+		}
+
+		public List<TextComponent> textComponents(PDFPage page, List<GridComponent> gridComponents)
+				throws IOException {
+			return locateAllTextComponents(page, new ArrayList<GridComponent>(gridComponents));
+		}
+	}
+
+	static class StageReader extends PDFReader {
+		private List<Component> unsortedComponents;
+
+		public StageReader(URL url, PDFComponentLocator componentLocator, BoxDetector boxDetector,
+				MarginDetector marginDetector) throws IOException {
+			super(url, componentLocator, boxDetector, marginDetector, new ReaderOptions().maxCachedPages(1));
+		}
+
+		public List<Component> groups(List<Component> containers) {
+			ComponentArrays arrays = new ComponentArrays(containers.size() * 2);
+			arrays.addAll(containers);
+			groupConnectedComponents(arrays, 0, containers.size());
+			return arrays.subList(containers.size(), arrays.size());
+		}
+
+		@Override
+		protected void attachSorted(ComponentArrays arrays, List<Component> roots, int... ranges) {
+			if (unsortedComponents == null) {
+				unsortedComponents = new ArrayList<Component>();
+				for (int range = 0; range < ranges.length; range += 2)
+					for (int i = ranges[range]; i < ranges[range + 1]; i++)
+						if (arrays.getParent(i) == ComponentArrays.NO_PARENT)
+							unsortedComponents.add(arrays.get(i));
+			}
+			super.attachSorted(arrays, roots, ranges);
+		}
+	}
+
+	static class RecordingMarginDetector implements MarginDetector {
+		private MarginDetector marginDetector = new MainMarginDetector();
+		private List<? extends Component> input;
+
+		@Override
+		public List<MarginComponent> detectMargins(List<? extends Component> components) {
+			if (input == null)
+				input = new ArrayList<Component>(components);
+			return marginDetector.detectMargins(components);
+		}
+	}
+}
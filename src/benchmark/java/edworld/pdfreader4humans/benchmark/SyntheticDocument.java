@@ -0,0 +1,72 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+/**
+ * Single page PDF with a bordered table and a text column whose size grows
+ * linearly with the given scale, so that the cost of each stage can be
+ * observed as the number of components of a page grows.
+ */
+public class SyntheticDocument {
+	private static final float WIDTH = 612;
+	private static final float BLOCK_HEIGHT = 792;
+	private static final float MARGIN = 36;
+	private static final float ROW_HEIGHT = 12;
+	private static final int COLUMNS = 5;
+	private static final float COLUMN_WIDTH = 70;
+
+	public static URL create(int scale) throws IOException {
+		File file = File.createTempFile("synthetic" + scale + "-", ".pdf");
+		file.deleteOnExit();
+		PDDocument doc = new PDDocument();
+		try {
+			PDPage page = new PDPage(new PDRectangle(WIDTH, BLOCK_HEIGHT * scale));
+			doc.addPage(page);
+			PDPageContentStream content = new PDPageContentStream(doc, page);
+			try {
+				for (int block = 0; block < scale; block++)
+					drawBlock(content, BLOCK_HEIGHT * (scale - block));
+			} finally {
+				content.close();
+			}
+			doc.save(file);
+		} finally {
+			doc.close();
+		}
+		return file.toURI().toURL();
+	}
+
+	private static void drawBlock(PDPageContentStream content, float top) throws IOException {
+		int rows = (int) ((BLOCK_HEIGHT - 2 * MARGIN) / ROW_HEIGHT);
+		content.setLineWidth(0.5F);
+		for (int row = 0; row < rows; row++)
+			for (int column = 0; column < COLUMNS; column++) {
+				float x = MARGIN + column * COLUMN_WIDTH;
+				float y = top - MARGIN - (row + 1) * ROW_HEIGHT;
+				content.addRect(x, y, COLUMN_WIDTH, ROW_HEIGHT);
+				content.stroke();
+				showText(content, x + 2, y + 3, "Cell " + (row + 1) + "." + (column + 1));
+			}
+		float textX = MARGIN + COLUMNS * COLUMN_WIDTH + 18;
+		for (int row = 0; row < rows; row++)
+			showText(content, textX, top - MARGIN - (row + 1) * ROW_HEIGHT + 3,
+					"Line " + (row + 1) + " of a paragraph beside the table");
+	}
+
+	private static void showText(PDPageContentStream content, float x, float y, String text) throws IOException {
+		content.beginText();
+		content.setFont(PDType1Font.HELVETICA, 7);
+		content.newLineAtOffset(x, y);
+		content.showText(text);
+		content.endText();
+	}
+}
@@ -0,0 +1,262 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Directory of finished analyses, each one stored in a file named after a
+ * hash of the PDF's bytes and of the reader's configuration. Files are
+ * written by AnalysisWriter under a temporary name and atomically renamed,
+ * so several JVMs on the same host may share the directory. When the files
+ * exceed the maximum size, the least recently used ones are deleted.
+ */
+public class AnalysisCache {
+	private static final String SUFFIX = ".analysis";
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+	private static final long STALE_TEMPORARY_AGE = TimeUnit.DAYS.toMillis(1);
+	private File directory;
+	private long maxBytes;
+	private AtomicLong hits = new AtomicLong();
+	private AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param maxBytes
+	 *            maximum total size of the cached analyses
+	 */
+	public AnalysisCache(File directory, long maxBytes) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Could not create the directory " + directory);
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @param configuration
+	 *            description of everything besides the PDF that changes the
+	 *            analysis
+	 * @return the key of the analysis of the PDF at the url with the given
+	 *         configuration
+	 */
+	public String key(URL url, String configuration) throws IOException {
+		MessageDigest digest = sha256();
+		InputStream input = url.openStream();
+		try {
+			byte[] buffer = new byte[65536];
+			for (int count = input.read(buffer); count >= 0; count = input.read(buffer))
+				digest.update(buffer, 0, count);
+		} finally {
+			input.close();
+		}
+		digest.update((byte) 0);
+		digest.update(configuration.getBytes("UTF-8"));
+		StringBuilder key = new StringBuilder();
+		for (byte value : digest.digest())
+			key.append(String.format("%02x", value));
+		return key.toString();
+	}
+
+	private MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return the cached analysis, or null if there is none or it cannot be
+	 *         read
+	 */
+	public Analysis load(String key) {
+		File file = new File(directory, key + SUFFIX);
+		try {
+			InputStream input = new FileInputStream(file);
+			try {
+				Analysis analysis = read(input);
+				file.setLastModified(System.currentTimeMillis());
+				hits.incrementAndGet();
+				return analysis;
+			} finally {
+				input.close();
+			}
+		} catch (FileNotFoundException e) {
+			misses.incrementAndGet();
+			return null;
+		} catch (IOException | RuntimeException e) {
+			file.delete();
+			misses.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Stores an analysis, then evicts the least recently used analyses if the
+	 * cache became too large.
+	 *
+	 * @return whether the analysis could be stored; it cannot be when a
+	 *         component has a class that ComponentCodec does not encode
+	 */
+	public boolean store(String key, Analysis analysis) {
+		File temporaryFile = null;
+		try {
+			temporaryFile = File.createTempFile(key + ".", TEMPORARY_SUFFIX, directory);
+			AnalysisWriter writer = new AnalysisWriter(new FileOutputStream(temporaryFile));
+			try {
+				write(writer, analysis);
+			} finally {
+				writer.close();
+			}
+			Files.move(temporaryFile.toPath(), new File(directory, key + SUFFIX).toPath(),
+					StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			if (temporaryFile != null)
+				temporaryFile.delete();
+			return false;
+		}
+		evict();
+		return true;
+	}
+
+	private Analysis read(InputStream input) throws IOException {
+		final Analysis analysis = new Analysis();
+		AnalysisReader.readPages(input, new AnalysisReader.PageHandler() {
+			@Override
+			public void page(int pageNumber, PageGeometry geometry, List<Component> firstLevelComponents) {
+				analysis.pageGeometries.add(geometry);
+				analysis.firstLevel.add(firstLevelComponents);
+			}
+		});
+		return analysis;
+	}
+
+	private void write(AnalysisWriter writer, Analysis analysis) throws IOException {
+		for (int i = 0; i < analysis.firstLevel.size(); i++)
+			writer.writePage(analysis.pageGeometries.get(i), analysis.firstLevel.get(i));
+	}
+
+	/**
+	 * Deletes the least recently used analyses beyond the maximum size, as
+	 * well as temporary files left behind by writers that died. Only one
+	 * thread of one JVM evicts at a time; the others skip eviction.
+	 */
+	protected void evict() {
+		try {
+			FileChannel channel = FileChannel.open(new File(directory, "eviction.lock").toPath(),
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			try {
+				FileLock lock = channel.tryLock();
+				if (lock != null)
+					try {
+						evictUnlocked();
+					} finally {
+						lock.release();
+					}
+			} catch (OverlappingFileLockException e) {
+				return;
+			} finally {
+				channel.close();
+			}
+		} catch (IOException e) {
+			return;
+		}
+	}
+
+	private void evictUnlocked() {
+		long now = System.currentTimeMillis();
+		File[] temporaryFiles = directory.listFiles(new SuffixFilter(TEMPORARY_SUFFIX));
+		for (File file : temporaryFiles)
+			if (now - file.lastModified() > STALE_TEMPORARY_AGE)
+				file.delete();
+		File[] files = directory.listFiles(new SuffixFilter(SUFFIX));
+		final long[] lastModified = new long[files.length];
+		long size = 0;
+		for (int i = 0; i < files.length; i++)
+			size += files[i].length();
+		if (size <= maxBytes)
+			return;
+		Integer[] order = new Integer[files.length];
+		for (int i = 0; i < files.length; i++) {
+			order[i] = i;
+			lastModified[i] = files[i].lastModified();
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer index1, Integer index2) {
+				return Long.compare(lastModified[index1], lastModified[index2]);
+			}
+		});
+		for (int i = 0; i < order.length && size > maxBytes; i++) {
+			long length = files[order[i]].length();
+			if (files[order[i]].delete())
+				size -= length;
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Page geometries and first level components of every page of a
+	 * document.
+	 */
+	public static class Analysis {
+		private List<PageGeometry> pageGeometries;
+		private List<List<Component>> firstLevel;
+
+		private Analysis() {
+			this(new ArrayList<PageGeometry>(), new ArrayList<List<Component>>());
+		}
+
+		public Analysis(List<PageGeometry> pageGeometries, List<List<Component>> firstLevel) {
+			this.pageGeometries = pageGeometries;
+			this.firstLevel = firstLevel;
+		}
+
+		public List<PageGeometry> getPageGeometries() {
+			return pageGeometries;
+		}
+
+		public List<List<Component>> getFirstLevel() {
+			return firstLevel;
+		}
+	}
+
+	private static class SuffixFilter implements FileFilter {
+		private String suffix;
+
+		private SuffixFilter(String suffix) {
+			this.suffix = suffix;
+		}
+
+		@Override
+		public boolean accept(File file) {
+			return file.isFile() && file.getName().endsWith(suffix);
+		}
+	}
+}
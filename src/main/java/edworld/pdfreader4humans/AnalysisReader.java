@@ -0,0 +1,126 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reader of analyses written by AnalysisWriter. A file is read with random
+ * access, decoding only the requested pages; a stream is read page by page.
+ */
+public class AnalysisReader implements Closeable {
+	private RandomAccessFile file;
+	private long[] pageOffsets;
+	private long indexOffset;
+
+	/**
+	 * Receiver of the pages of a stream.
+	 */
+	public interface PageHandler {
+		void page(int pageNumber, PageGeometry geometry, List<Component> firstLevelComponents) throws IOException;
+	}
+
+	public AnalysisReader(File analysisFile) throws IOException {
+		file = new RandomAccessFile(analysisFile, "r");
+		try {
+			checkHeader(file.readInt(), file.readInt());
+			if (file.length() < 8 + AnalysisWriter.TRAILER_LENGTH)
+				throw new IOException("Truncated analysis");
+			file.seek(file.length() - AnalysisWriter.TRAILER_LENGTH);
+			indexOffset = file.readLong();
+			if (file.readInt() != AnalysisWriter.MAGIC || indexOffset < 8
+					|| indexOffset > file.length() - AnalysisWriter.TRAILER_LENGTH)
+				throw new IOException("Truncated analysis");
+			file.seek(indexOffset);
+			if (file.readByte() != AnalysisWriter.INDEX)
+				throw new IOException("Missing page index");
+			int count = ComponentCodec.readVarInt(file);
+			if (count < 0 || count > (file.length() - indexOffset) / 8)
+				throw new IOException("Corrupt page index");
+			pageOffsets = new long[count];
+			for (int i = 0; i < count; i++) {
+				pageOffsets[i] = file.readLong();
+				if (pageOffsets[i] <= (i > 0 ? pageOffsets[i - 1] : 7) || pageOffsets[i] >= indexOffset)
+					throw new IOException("Corrupt page index");
+			}
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	public int getNumberOfPages() {
+		return pageOffsets.length;
+	}
+
+	public PageGeometry getPageGeometry(int pageNumber) throws IOException {
+		return new ComponentCodec().readGeometry(pageInput(pageNumber));
+	}
+
+	public List<Component> getFirstLevelComponents(int pageNumber) throws IOException {
+		DataInputStream input = pageInput(pageNumber);
+		ComponentCodec codec = new ComponentCodec();
+		codec.readGeometry(input);
+		return readComponents(input, codec);
+	}
+
+	private synchronized DataInputStream pageInput(int pageNumber) throws IOException {
+		if (pageNumber < 1 || pageNumber > pageOffsets.length)
+			throw new IndexOutOfBoundsException("Page " + pageNumber + " of " + pageOffsets.length);
+		long start = pageOffsets[pageNumber - 1];
+		long end = pageNumber < pageOffsets.length ? pageOffsets[pageNumber] : indexOffset;
+		byte[] bytes = new byte[(int) (end - start)];
+		file.seek(start);
+		file.readFully(bytes);
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+		if (input.readByte() != AnalysisWriter.PAGE)
+			throw new IOException("Missing page " + pageNumber);
+		return input;
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	/**
+	 * Reads every page of a stream in order, without the index.
+	 * 
+	 * @return the number of pages
+	 */
+	public static int readPages(InputStream stream, PageHandler handler) throws IOException {
+		DataInputStream input = new DataInputStream(new BufferedInputStream(stream));
+		checkHeader(input.readInt(), input.readInt());
+		ComponentCodec codec = new ComponentCodec();
+		int pageNumber = 0;
+		for (byte tag = input.readByte(); tag == AnalysisWriter.PAGE; tag = input.readByte()) {
+			codec.reset();
+			PageGeometry geometry = codec.readGeometry(input);
+			handler.page(++pageNumber, geometry, readComponents(input, codec));
+		}
+		return pageNumber;
+	}
+
+	private static List<Component> readComponents(DataInputStream input, ComponentCodec codec) throws IOException {
+		int count = ComponentCodec.readVarInt(input);
+		List<Component> components = new ArrayList<Component>(count);
+		for (int i = 0; i < count; i++)
+			components.add(codec.readComponent(input));
+		return components;
+	}
+
+	private static void checkHeader(int magic, int version) throws IOException {
+		if (magic != AnalysisWriter.MAGIC)
+			throw new IOException("Not an analysis");
+		if (version != AnalysisWriter.VERSION)
+			throw new IOException("Unsupported analysis version: " + version);
+	}
+}
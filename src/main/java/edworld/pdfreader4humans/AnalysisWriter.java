@@ -0,0 +1,100 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.output.CountingOutputStream;
+
+/**
+ * Writer of analyses in the binary format read by AnalysisReader, one page
+ * at a time. The format is a header, the pages, an index with the offset of
+ * each page and a trailer with the offset of the index:
+ * 
+ * <pre>
+ * header:  int MAGIC, int VERSION
+ * page:    byte PAGE, geometry, varint count, count components
+ * index:   byte INDEX, varint pages, pages longs (page offsets)
+ * trailer: long index offset, int MAGIC
+ * </pre>
+ * 
+ * Each page is encoded on its own by ComponentCodec, so it can be decoded
+ * without the pages before it. The index and the trailer are only written
+ * when no page failed and the writer was not aborted, so AnalysisReader
+ * rejects an incomplete analysis instead of reading a broken last page.
+ */
+public class AnalysisWriter implements Closeable {
+	static final int MAGIC = 0x50523448;
+	static final int VERSION = 1;
+	static final byte PAGE = 1;
+	static final byte INDEX = 2;
+	static final int TRAILER_LENGTH = 12;
+	private CountingOutputStream counter;
+	private DataOutputStream output;
+	private ComponentCodec codec = new ComponentCodec();
+	private List<Long> pageOffsets = new ArrayList<Long>();
+	private boolean aborted;
+
+	public AnalysisWriter(OutputStream output) throws IOException {
+		counter = new CountingOutputStream(new BufferedOutputStream(output));
+		this.output = new DataOutputStream(counter);
+		this.output.writeInt(MAGIC);
+		this.output.writeInt(VERSION);
+	}
+
+	/**
+	 * Aborts the writer if the page cannot be written.
+	 */
+	public void writePage(PageGeometry geometry, List<Component> firstLevelComponents) throws IOException {
+		if (aborted)
+			throw new IllegalStateException("The analysis was aborted");
+		boolean written = false;
+		try {
+			pageOffsets.add(counter.getByteCount());
+			output.writeByte(PAGE);
+			codec.reset();
+			codec.writeGeometry(output, geometry);
+			ComponentCodec.writeVarInt(output, firstLevelComponents.size());
+			for (Component component : firstLevelComponents)
+				codec.writeComponent(output, component);
+			written = true;
+		} finally {
+			if (!written)
+				abort();
+		}
+	}
+
+	/**
+	 * Leaves the analysis incomplete, so close() only closes the underlying
+	 * stream, e.g. because a page could not be analysed.
+	 */
+	public void abort() {
+		aborted = true;
+	}
+
+	/**
+	 * Writes the index of the pages, unless the writer was aborted, and closes
+	 * the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (aborted)
+				return;
+			long indexOffset = counter.getByteCount();
+			output.writeByte(INDEX);
+			ComponentCodec.writeVarInt(output, pageOffsets.size());
+			for (long offset : pageOffsets)
+				output.writeLong(offset);
+			output.writeLong(indexOffset);
+			output.writeInt(MAGIC);
+		} finally {
+			output.close();
+		}
+	}
+}
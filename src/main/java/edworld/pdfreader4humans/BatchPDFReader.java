@@ -0,0 +1,229 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static org.apache.commons.io.FileUtils.openOutputStream;
+import static org.apache.commons.io.FileUtils.readLines;
+import static org.apache.commons.io.FileUtils.writeLines;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edworld.pdfreader4humans.impl.MainBoxDetector;
+import edworld.pdfreader4humans.impl.MainMarginDetector;
+import edworld.pdfreader4humans.impl.MainPDFComponentLocator;
+import edworld.pdfreader4humans.util.LoadOptions;
+
+/**
+ * Converts many PDFs in one JVM, each one on a worker of a fixed pool. At most
+ * one document per worker is read at a time, and a document that fails is
+ * logged without stopping the others.
+ */
+public class BatchPDFReader {
+	/**
+	 * Format of the converted files, which also gives their extension.
+	 */
+	public enum Format {
+		XML("xml"), TXT("txt"), JSON("json"), COMPACT_JSON("json");
+
+		private String extension;
+
+		private Format(String extension) {
+			this.extension = extension;
+		}
+
+		public String getExtension() {
+			return extension;
+		}
+	}
+
+	private Format format;
+	private int threads;
+	private LoadOptions loadOptions;
+	private AnalysisCache analysisCache;
+	private PrintStream log;
+
+	/**
+	 * @param toXML
+	 *            whether the PDFs are saved as XML files, or else as TXT
+	 *            files
+	 * @param threads
+	 *            number of documents converted at the same time
+	 * @param log
+	 *            receiver of one line per converted or failed document
+	 */
+	public BatchPDFReader(boolean toXML, int threads, LoadOptions loadOptions, PrintStream log) {
+		this(toXML, threads, loadOptions, null, log);
+	}
+
+	/**
+	 * @param toXML
+	 *            whether the PDFs are saved as XML files, or else as TXT
+	 *            files
+	 * @param threads
+	 *            number of documents converted at the same time
+	 * @param analysisCache
+	 *            cache of the analyses of PDFs already read, or null
+	 * @param log
+	 *            receiver of one line per converted or failed document
+	 */
+	public BatchPDFReader(boolean toXML, int threads, LoadOptions loadOptions, AnalysisCache analysisCache,
+			PrintStream log) {
+		this(toXML ? Format.XML : Format.TXT, threads, loadOptions, analysisCache, log);
+	}
+
+	/**
+	 * @param format
+	 *            format of the saved files
+	 * @param threads
+	 *            number of documents converted at the same time
+	 * @param analysisCache
+	 *            cache of the analyses of PDFs already read, or null
+	 * @param log
+	 *            receiver of one line per converted or failed document
+	 */
+	public BatchPDFReader(Format format, int threads, LoadOptions loadOptions, AnalysisCache analysisCache,
+			PrintStream log) {
+		if (threads < 1)
+			throw new IllegalArgumentException("At least one thread is needed: " + threads);
+		this.format = format;
+		this.threads = threads;
+		this.loadOptions = loadOptions;
+		this.analysisCache = analysisCache;
+		this.log = log;
+	}
+
+	/**
+	 * @param source
+	 *            a directory whose PDF files are converted, or a text file
+	 *            listing the PDF files to convert, one per line
+	 * @return the PDFs given by the source
+	 */
+	public static List<File> sourceFiles(File source) throws IOException {
+		List<File> files = new ArrayList<File>();
+		if (source.isDirectory()) {
+			File[] pdfFiles = source.listFiles(new FileFilter() {
+				@Override
+				public boolean accept(File file) {
+					return file.isFile() && file.getName().toLowerCase().endsWith(".pdf");
+				}
+			});
+			Arrays.sort(pdfFiles);
+			files.addAll(Arrays.asList(pdfFiles));
+		} else
+			for (String line : readLines(source, "UTF-8"))
+				if (!line.trim().isEmpty())
+					files.add(new File(line.trim()));
+		return files;
+	}
+
+	/**
+	 * Converts each PDF into a file of the target directory named after it. A
+	 * PDF named like one before it, in another directory, is not converted, as
+	 * its file would overwrite the other one.
+	 * 
+	 * @return the number of PDFs that could not be converted
+	 */
+	public int convert(List<File> sourceFiles, File targetDirectory) throws IOException {
+		if (!targetDirectory.isDirectory() && !targetDirectory.mkdirs())
+			throw new IOException("Could not create the directory " + targetDirectory);
+		final Semaphore workers = new Semaphore(threads);
+		final AtomicInteger failures = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		Map<String, File> targetSources = new HashMap<String, File>();
+		long start = System.nanoTime();
+		try {
+			for (final File sourceFile : sourceFiles) {
+				final File targetFile = new File(targetDirectory, targetName(sourceFile));
+				String targetKey = targetFile.getName().toLowerCase();
+				if (targetSources.containsKey(targetKey)) {
+					failures.incrementAndGet();
+					log.println("FAILED " + sourceFile + " 0 ms: " + targetFile + " is already converted from "
+							+ targetSources.get(targetKey));
+					continue;
+				}
+				targetSources.put(targetKey, sourceFile);
+				workers.acquireUninterruptibly();
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							convert(sourceFile, targetFile, failures);
+						} finally {
+							workers.release();
+						}
+					}
+				});
+			}
+		} finally {
+			executor.shutdown();
+			awaitTermination(executor);
+		}
+		log.println("Converted " + (sourceFiles.size() - failures.get()) + " of " + sourceFiles.size()
+				+ " PDFs in " + millis(start) + " ms");
+		return failures.get();
+	}
+
+	private void convert(File sourceFile, File targetFile, AtomicInteger failures) {
+		long start = System.nanoTime();
+		try {
+			convert(sourceFile, targetFile);
+			log.println("OK " + sourceFile + " " + millis(start) + " ms");
+		} catch (Throwable e) {
+			failures.incrementAndGet();
+			log.println("FAILED " + sourceFile + " " + millis(start) + " ms: " + e);
+		}
+	}
+
+	protected void convert(File sourceFile, File targetFile) throws IOException {
+		PDFReader reader = new PDFReader(sourceFile.toURI().toURL(), new MainPDFComponentLocator(),
+				new MainBoxDetector(), new MainMarginDetector(), new ReaderOptions().loadOptions(loadOptions)
+						.analysisCache(analysisCache));
+		if (format == Format.TXT) {
+			writeLines(targetFile, "UTF-8", reader.toTextLines());
+			return;
+		}
+		OutputStream output = openOutputStream(targetFile);
+		try {
+			if (format == Format.XML)
+				reader.writeXML(output);
+			else
+				reader.writeJSON(output, format == Format.COMPACT_JSON);
+		} finally {
+			output.close();
+		}
+	}
+
+	private String targetName(File sourceFile) {
+		String name = sourceFile.getName();
+		if (name.toLowerCase().endsWith(".pdf"))
+			name = name.substring(0, name.length() - 4);
+		return name + "." + format.getExtension();
+	}
+
+	private void awaitTermination(ExecutorService executor) {
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.MINUTES))
+				continue;
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private long millis(long start) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+}
@@ -1,6 +1,8 @@
 // This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
 package edworld.pdfreader4humans;
 
+import java.io.IOException;
+
 public class BoxComponent extends Component {
 	private boolean borderLeft, borderTop, borderRight, borderBottom;
 	private float lineWidth;
@@ -19,12 +21,34 @@ public class BoxComponent extends Component {
 		return lineWidth;
 	}
 
+	public boolean hasBorderLeft() {
+		return borderLeft;
+	}
+
+	public boolean hasBorderTop() {
+		return borderTop;
+	}
+
+	public boolean hasBorderRight() {
+		return borderRight;
+	}
+
+	public boolean hasBorderBottom() {
+		return borderBottom;
+	}
+
 	@Override
-	public String output(String template) {
-		String output = super.output(template);
-		output = fillTemplate(output, "lineWidth", getLineWidth());
-		output = fillTemplate(output, "borders", borderToString());
-		return output;
+	public boolean appendField(String fieldName, Appendable output) throws IOException {
+		switch (fieldName) {
+		case "lineWidth":
+			output.append(String.valueOf(getLineWidth()));
+			return true;
+		case "borders":
+			output.append(borderToString());
+			return true;
+		default:
+			return super.appendField(fieldName, output);
+		}
 	}
 
 	@Override
@@ -5,14 +5,14 @@ import static edworld.pdfreader4humans.TextComponent.UNDERLINE_TOLERANCE;
 import static java.util.Collections.sort;
 import static java.util.regex.Matcher.quoteReplacement;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
-public abstract class Component implements Comparable<Component> {
+import edworld.pdfreader4humans.util.ReadingOrder;
+
+public abstract class Component implements Comparable<Component>, Template.Fields {
 	protected String type;
 	protected float fromX;
 	protected float fromY;
@@ -138,19 +138,47 @@ public abstract class Component implements Comparable<Component> {
 		return null;
 	}
 
+	/**
+	 * Fills the template with the fields given by appendField, which is what
+	 * PDFReader writes. Subclasses add or change fields by overriding
+	 * appendField: overriding this method does not affect the output of
+	 * PDFReader.
+	 */
 	public String output(String template) {
-		String output = fillTemplate(template, "type", getType());
-		output = fillTemplate(output, "fromX", getFromX());
-		output = fillTemplate(output, "fromY", getFromY());
-		output = fillTemplate(output, "toX", getToX());
-		output = fillTemplate(output, "toY", getToY());
-		return output;
+		return Template.fill(template, this);
 	}
 
+	/**
+	 * @deprecated fields are written through appendField, in a single pass
+	 */
+	@Deprecated
 	protected String fillTemplate(String template, String fieldName, Object fieldValue) {
 		return template.replaceAll("\\$\\{" + fieldName + "\\}", quoteReplacement(fieldValue.toString()));
 	}
 
+	@Override
+	public boolean appendField(String fieldName, Appendable output) throws IOException {
+		switch (fieldName) {
+		case "type":
+			output.append(getType());
+			return true;
+		case "fromX":
+			output.append(String.valueOf(getFromX()));
+			return true;
+		case "fromY":
+			output.append(String.valueOf(getFromY()));
+			return true;
+		case "toX":
+			output.append(String.valueOf(getToX()));
+			return true;
+		case "toY":
+			output.append(String.valueOf(getToY()));
+			return true;
+		default:
+			return false;
+		}
+	}
+
 	@Override
 	public String toString() {
 		return type + " :: " + fromX + ", " + fromY + ", " + toX + ", " + toY;
@@ -174,46 +202,46 @@ public abstract class Component implements Comparable<Component> {
 		return verticalComponents;
 	}
 
-	public static <T extends Component> void smartSort(List<T> list) {
-		Map<T, List<T>> mapRemovedAfter = new HashMap<T, List<T>>();
-		Map<T, T> mapRemovedBefore = new HashMap<T, T>();
-		for (int i = 0; i < list.size(); i++) {
-			T component1 = list.get(i);
-			for (int j = i + 1; j < list.size(); j++) {
-				T component2 = list.get(j);
-				if (!component1.verticallyBefore(component2) && !component1.verticallyAfter(component2)) {
-					T afterComponent;
-					T beforeComponent;
-					if (component1.compareTo(component2) < 0) {
-						afterComponent = component2;
-						beforeComponent = component1;
-					} else {
-						afterComponent = component1;
-						beforeComponent = component2;
-					}
-					if (!mapRemovedBefore.containsKey(beforeComponent)) {
-						while (mapRemovedBefore.containsKey(afterComponent))
-							afterComponent = mapRemovedBefore.get(afterComponent);
-						if (!mapRemovedAfter.containsKey(afterComponent))
-							mapRemovedAfter.put(afterComponent, new ArrayList<T>());
-						if (mapRemovedAfter.containsKey(beforeComponent)) {
-							mapRemovedAfter.get(afterComponent).addAll(mapRemovedAfter.get(beforeComponent));
-							mapRemovedAfter.remove(beforeComponent);
-						}
-						mapRemovedAfter.get(afterComponent).add(beforeComponent);
-						mapRemovedBefore.put(beforeComponent, afterComponent);
-					}
-				}
+	/**
+	 * Sorts in reading order. Components that overlap vertically are chained
+	 * into bands: each one is moved right before the first component it
+	 * precedes, following the chain of components already moved. The
+	 * remaining components are sorted and each band is sorted recursively and
+	 * reinserted before its component. Overlapping pairs are found through a
+	 * tree over the vertical intervals that checks each component only against
+	 * the ones overlapping it, so the cost is O(n log n) when each component
+	 * overlaps a bounded number of components in its line.
+	 */
+	public static <T extends Component> void smartSort(final List<T> list) {
+		int[] ids = new int[list.size()];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = i;
+		new ReadingOrder() {
+			@Override
+			protected int compare(int id1, int id2) {
+				return list.get(id1).compareTo(list.get(id2));
 			}
-		}
-		for (T componentAfter : mapRemovedAfter.keySet())
-			list.removeAll(mapRemovedAfter.get(componentAfter));
-		Collections.sort(list);
-		for (T componentAfter : mapRemovedAfter.keySet()) {
-			List<T> beforeList = mapRemovedAfter.get(componentAfter);
-			smartSort(beforeList);
-			list.addAll(list.indexOf(componentAfter), beforeList);
-		}
+
+			@Override
+			protected float bandStart(int id) {
+				return list.get(id).getFromY() + list.get(id).getHeight() / 20;
+			}
+
+			@Override
+			protected float bandEnd(int id) {
+				return list.get(id).getToY() - list.get(id).getHeight() / 20;
+			}
+
+			@Override
+			protected boolean sameBand(int id1, int id2) {
+				return !list.get(id1).verticallyBefore(list.get(id2)) && !list.get(id1).verticallyAfter(list.get(id2));
+			}
+		}.sort(ids, ids.length);
+		List<T> sorted = new ArrayList<T>(ids.length);
+		for (int id : ids)
+			sorted.add(list.get(id));
+		list.clear();
+		list.addAll(sorted);
 	}
 
 	public static Comparator<Component> orderByYX() {
@@ -0,0 +1,201 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+/**
+ * Binary encoding of component trees and page geometries that restores them
+ * exactly, float for float. Counts are written as variable-length integers,
+ * and each distinct string (text type, font name or text) is written once
+ * until the codec is reset, then referred to by its number. Only the
+ * component classes of this package can be encoded.
+ */
+public class ComponentCodec {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final byte TEXT = 1;
+	private static final byte GRID = 2;
+	private static final byte BOX = 3;
+	private static final byte GROUP = 4;
+	private static final byte MARGIN = 5;
+	private static final int NULL_STRING = 0;
+	private static final int NEW_STRING = 1;
+	private Map<String, Integer> writtenStrings = new HashMap<String, Integer>();
+	private List<String> readStrings = new ArrayList<String>();
+
+	/**
+	 * Forgets the strings written or read so far, so that what follows can be
+	 * decoded on its own.
+	 */
+	public void reset() {
+		writtenStrings.clear();
+		readStrings.clear();
+	}
+
+	public void writeComponent(DataOutput output, Component component) throws IOException {
+		if (component.getClass() == TextComponent.class) {
+			TextComponent text = (TextComponent) component;
+			output.writeByte(TEXT);
+			writeBounds(output, component);
+			writeString(output, text.getText());
+			writeString(output, text.getFontName());
+			output.writeFloat(text.getFontSize());
+		} else if (component.getClass() == GridComponent.class) {
+			output.writeByte(GRID);
+			writeBounds(output, component);
+			writeString(output, component.getType());
+			output.writeFloat(((GridComponent) component).getLineWidth());
+		} else if (component.getClass() == BoxComponent.class) {
+			BoxComponent box = (BoxComponent) component;
+			output.writeByte(BOX);
+			writeBounds(output, component);
+			output.writeFloat(box.getLineWidth());
+			output.writeByte((box.hasBorderLeft() ? 1 : 0) | (box.hasBorderTop() ? 2 : 0)
+					| (box.hasBorderRight() ? 4 : 0) | (box.hasBorderBottom() ? 8 : 0));
+		} else if (component.getClass() == GroupComponent.class) {
+			output.writeByte(GROUP);
+			writeBounds(output, component);
+		} else if (component.getClass() == MarginComponent.class) {
+			output.writeByte(MARGIN);
+			writeBounds(output, component);
+		} else
+			throw new IOException("Components of " + component.getClass() + " cannot be encoded");
+		writeVarInt(output, component.getChildren().size());
+		for (Component child : component.getChildren())
+			writeComponent(output, child);
+	}
+
+	public Component readComponent(DataInput input) throws IOException {
+		byte kind = input.readByte();
+		float fromX = input.readFloat();
+		float fromY = input.readFloat();
+		float toX = input.readFloat();
+		float toY = input.readFloat();
+		Component component;
+		switch (kind) {
+		case TEXT:
+			component = new TextComponent(readString(input), fromX, fromY, toX, toY, readString(input),
+					input.readFloat());
+			break;
+		case GRID:
+			component = new GridComponent(readString(input), fromX, fromY, toX, toY, input.readFloat());
+			break;
+		case BOX:
+			float lineWidth = input.readFloat();
+			byte borders = input.readByte();
+			component = new BoxComponent(fromX, fromY, toX, toY, lineWidth, (borders & 1) != 0, (borders & 2) != 0,
+					(borders & 4) != 0, (borders & 8) != 0);
+			break;
+		case GROUP:
+			component = new GroupComponent(fromX, fromY, toX, toY);
+			break;
+		case MARGIN:
+			component = new MarginComponent(fromX, fromY, toX, toY);
+			break;
+		default:
+			throw new IOException("Unknown component kind: " + kind);
+		}
+		int childCount = readVarInt(input);
+		for (int i = 0; i < childCount; i++)
+			component.addChild(readComponent(input));
+		return component;
+	}
+
+	public void writeGeometry(DataOutput output, PageGeometry geometry) throws IOException {
+		writeRectangle(output, geometry.getCropBox());
+		writeRectangle(output, geometry.getMediaBox());
+		output.writeInt(geometry.getRotation());
+	}
+
+	public PageGeometry readGeometry(DataInput input) throws IOException {
+		return new PageGeometry(readRectangle(input), readRectangle(input), input.readInt());
+	}
+
+	private void writeBounds(DataOutput output, Component component) throws IOException {
+		output.writeFloat(component.getFromX());
+		output.writeFloat(component.getFromY());
+		output.writeFloat(component.getToX());
+		output.writeFloat(component.getToY());
+	}
+
+	private void writeRectangle(DataOutput output, PDRectangle rectangle) throws IOException {
+		output.writeFloat(rectangle.getLowerLeftX());
+		output.writeFloat(rectangle.getLowerLeftY());
+		output.writeFloat(rectangle.getUpperRightX());
+		output.writeFloat(rectangle.getUpperRightY());
+	}
+
+	private PDRectangle readRectangle(DataInput input) throws IOException {
+		PDRectangle rectangle = new PDRectangle();
+		rectangle.setLowerLeftX(input.readFloat());
+		rectangle.setLowerLeftY(input.readFloat());
+		rectangle.setUpperRightX(input.readFloat());
+		rectangle.setUpperRightY(input.readFloat());
+		return rectangle;
+	}
+
+	private void writeString(DataOutput output, String string) throws IOException {
+		if (string == null) {
+			writeVarInt(output, NULL_STRING);
+			return;
+		}
+		Integer number = writtenStrings.get(string);
+		if (number != null) {
+			writeVarInt(output, NEW_STRING + 1 + number);
+			return;
+		}
+		writtenStrings.put(string, writtenStrings.size());
+		byte[] bytes = string.getBytes(UTF_8);
+		writeVarInt(output, NEW_STRING);
+		writeVarInt(output, bytes.length);
+		output.write(bytes);
+	}
+
+	private String readString(DataInput input) throws IOException {
+		int code = readVarInt(input);
+		if (code == NULL_STRING)
+			return null;
+		if (code > NEW_STRING) {
+			if (code - NEW_STRING - 1 >= readStrings.size())
+				throw new IOException("Unknown string number: " + (code - NEW_STRING - 1));
+			return readStrings.get(code - NEW_STRING - 1);
+		}
+		byte[] bytes = new byte[readVarInt(input)];
+		input.readFully(bytes);
+		String string = new String(bytes, UTF_8);
+		readStrings.add(string);
+		return string;
+	}
+
+	/**
+	 * Writes a non-negative int in 7-bit groups, least significant first.
+	 */
+	public static void writeVarInt(DataOutput output, int value) throws IOException {
+		if (value < 0)
+			throw new IOException("Negative count: " + value);
+		while (value >= 0x80) {
+			output.writeByte(value & 0x7F | 0x80);
+			value >>>= 7;
+		}
+		output.writeByte(value);
+	}
+
+	public static int readVarInt(DataInput input) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte next = input.readByte();
+			value |= (next & 0x7F) << shift;
+			if (next >= 0)
+				return value;
+		}
+		throw new IOException("Malformed count");
+	}
+}
@@ -0,0 +1,199 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static org.apache.commons.io.FileUtils.copyInputStreamToFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import edworld.pdfreader4humans.impl.MainBoxDetector;
+import edworld.pdfreader4humans.impl.MainMarginDetector;
+import edworld.pdfreader4humans.impl.MainPDFComponentLocator;
+import edworld.pdfreader4humans.util.LoadOptions;
+
+/**
+ * HTTP server on the loopback interface that keeps a warm reader around for
+ * many documents. POST a PDF to /xml or /txt, or GET /xml?path=... or
+ * /txt?path=... for a local PDF, to receive the XML or the text lines of the
+ * document. At most the given number of documents are read at the same time,
+ * and requests beyond the maximum queue depth are refused with status 503.
+ * Each response carries its queueing and processing times in the
+ * X-Queue-Time and X-Processing-Time headers, in milliseconds.
+ */
+public class ExtractionServer {
+	private static final String UTF_8 = "UTF-8";
+	private HttpServer server;
+	private ExecutorService executor;
+	private Semaphore admissions;
+	private Semaphore workers;
+	private LoadOptions loadOptions;
+	private AnalysisCache analysisCache;
+	private PDFComponentLocator componentLocator = new MainPDFComponentLocator();
+	private BoxDetector boxDetector = new MainBoxDetector();
+	private MarginDetector marginDetector = new MainMarginDetector();
+
+	/**
+	 * @param port
+	 *            loopback port to listen on, or 0 for any free port
+	 * @param threads
+	 *            number of documents read at the same time
+	 * @param maxQueue
+	 *            number of requests that may wait for a free thread
+	 * @param analysisCache
+	 *            cache of the analyses of the documents read, looked up
+	 *            before reading each document; null for no cache
+	 */
+	public ExtractionServer(int port, int threads, int maxQueue, LoadOptions loadOptions,
+			AnalysisCache analysisCache) throws IOException {
+		if (threads < 1)
+			throw new IllegalArgumentException("At least one thread is needed: " + threads);
+		if (maxQueue < 0)
+			throw new IllegalArgumentException("Negative maximum queue depth: " + maxQueue);
+		this.loadOptions = loadOptions;
+		this.analysisCache = analysisCache;
+		admissions = new Semaphore(threads + maxQueue);
+		workers = new Semaphore(threads);
+		executor = Executors.newCachedThreadPool();
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/xml", new ExtractionHandler(true));
+		server.createContext("/txt", new ExtractionHandler(false));
+		server.setExecutor(executor);
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdown();
+	}
+
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	/**
+	 * @return how many more requests may be admitted before the next ones are
+	 *         refused
+	 */
+	int availableAdmissions() {
+		return admissions.availablePermits();
+	}
+
+	private class ExtractionHandler implements HttpHandler {
+		private boolean toXML;
+
+		private ExtractionHandler(boolean toXML) {
+			this.toXML = toXML;
+		}
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				if (!admissions.tryAcquire())
+					respond(exchange, 503, "Too many requests are waiting");
+				else
+					try {
+						long start = System.nanoTime();
+						workers.acquireUninterruptibly();
+						try {
+							exchange.getResponseHeaders().set("X-Queue-Time", String.valueOf(millis(start)));
+							extract(exchange);
+						} finally {
+							workers.release();
+						}
+					} finally {
+						admissions.release();
+					}
+			} finally {
+				exchange.close();
+			}
+		}
+
+		private void extract(HttpExchange exchange) throws IOException {
+			long start = System.nanoTime();
+			File file;
+			boolean uploaded = exchange.getRequestMethod().equals("POST");
+			if (uploaded) {
+				file = File.createTempFile("upload", ".pdf");
+				try {
+					copyInputStreamToFile(exchange.getRequestBody(), file);
+				} catch (IOException e) {
+					file.delete();
+					throw e;
+				}
+			} else {
+				String path = parameter(exchange, "path");
+				if (path == null) {
+					respond(exchange, 400, "POST a PDF or give its path as a parameter");
+					return;
+				}
+				file = new File(path);
+				if (!file.isFile()) {
+					respond(exchange, 404, "No such file: " + path);
+					return;
+				}
+			}
+			PDFReader reader;
+			try {
+				reader = new PDFReader(file.toURI().toURL(), componentLocator, boxDetector, marginDetector,
+						new ReaderOptions().loadOptions(loadOptions).analysisCache(analysisCache));
+			} catch (IOException | RuntimeException e) {
+				respond(exchange, 422, "Could not read the PDF: " + e);
+				return;
+			} finally {
+				if (uploaded)
+					file.delete();
+			}
+			exchange.getResponseHeaders().set("X-Processing-Time", String.valueOf(millis(start)));
+			exchange.getResponseHeaders().set("Content-Type",
+					(toXML ? "application/xml" : "text/plain") + "; charset=" + UTF_8);
+			exchange.sendResponseHeaders(200, 0);
+			OutputStream output = exchange.getResponseBody();
+			if (toXML)
+				reader.writeXML(output);
+			else {
+				Writer writer = new OutputStreamWriter(output, UTF_8);
+				for (String line : reader.toTextLines())
+					writer.write(line + PDFReader.LINE_BREAK);
+				writer.flush();
+			}
+		}
+
+		private String parameter(HttpExchange exchange, String name) throws UnsupportedEncodingException {
+			String query = exchange.getRequestURI().getRawQuery();
+			if (query != null)
+				for (String pair : query.split("&"))
+					if (pair.startsWith(name + "="))
+						return URLDecoder.decode(pair.substring(name.length() + 1), UTF_8);
+			return null;
+		}
+
+		private void respond(HttpExchange exchange, int status, String message) throws IOException {
+			byte[] body = (message + "\n").getBytes(UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=" + UTF_8);
+			exchange.sendResponseHeaders(status, body.length);
+			exchange.getResponseBody().write(body);
+		}
+
+		private long millis(long start) {
+			return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		}
+	}
+}
@@ -1,6 +1,8 @@
 // This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
 package edworld.pdfreader4humans;
 
+import java.io.IOException;
+
 public class GridComponent extends Component {
 	private float lineWidth;
 
@@ -14,8 +16,11 @@ public class GridComponent extends Component {
 	}
 
 	@Override
-	public String output(String template) {
-		return fillTemplate(super.output(template), "lineWidth", getLineWidth());
+	public boolean appendField(String fieldName, Appendable output) throws IOException {
+		if (!fieldName.equals("lineWidth"))
+			return super.appendField(fieldName, output);
+		output.append(String.valueOf(getLineWidth()));
+		return true;
 	}
 
 	@Override
@@ -1,26 +1,71 @@
 package edworld.pdfreader4humans;
 
-import static org.apache.commons.io.FileUtils.writeLines;
-import static org.apache.commons.io.FileUtils.writeStringToFile;
-
 import java.io.File;
 import java.io.IOException;
 
-import edworld.pdfreader4humans.impl.MainBoxDetector;
-import edworld.pdfreader4humans.impl.MainMarginDetector;
-import edworld.pdfreader4humans.impl.MainPDFComponentLocator;
+import edworld.pdfreader4humans.util.LoadOptions;
 
 public class MainPDFReader {
 	public static void main(String[] args) throws IOException {
-		if (args.length < 3) {
+		if (args.length < 3 && !(args.length == 2 && args[0].equals("-server"))) {
 			System.out.println("Syntax for saving a PDF's content into a XML file: -toXML sourcePDF targetXML");
 			System.out.println("Syntax for saving a PDF's content into a TXT file: -toTXT sourcePDF targetTXT");
+			System.out.println("Syntax for saving a PDF's content into a JSON file: -toJSON sourcePDF targetJSON");
+			System.out.println("Syntax for saving many PDFs into XML files: -batchXML sourceDirectoryOrFileList targetDirectory");
+			System.out.println("Syntax for saving many PDFs into TXT files: -batchTXT sourceDirectoryOrFileList targetDirectory");
+			System.out.println("Syntax for saving many PDFs into JSON files: -batchJSON sourceDirectoryOrFileList targetDirectory");
+			System.out.println("Syntax for serving XML and TXT conversions on a local port: -server port");
+			System.out.println("Add -maxMemory MB to read each PDF in place and keep at most MB megabytes of it on the heap, using temporary files for the rest");
+			System.out.println("Add -threads N to convert N PDFs of a batch or of the server at the same time (default: number of processors)");
+			System.out.println("Add -cache directory to keep the analyses of the PDFs in the directory, reusing them when the same PDFs are read again");
+			System.out.println("Add -cacheSize MB to keep at most MB megabytes of analyses in the cache (default: 1024)");
+			System.out.println("Add -maxQueue N to let at most N requests wait for the server (default: 100)");
+			System.out.println("Add -compact to write JSON files without any whitespace");
+			return;
+		}
+		LoadOptions loadOptions = LoadOptions.IN_MEMORY;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int maxQueue = 100;
+		File cacheDirectory = null;
+		long cacheSize = 1024;
+		boolean compact = false;
+		for (int i = args[0].equals("-server") ? 2 : 3; i < args.length; i++)
+			if (args[i].equals("-compact"))
+				compact = true;
+			else if (i + 1 == args.length)
+				break;
+			else if (args[i].equals("-maxMemory"))
+				loadOptions = LoadOptions.scratchFile(Long.parseLong(args[++i]) * 1024 * 1024);
+			else if (args[i].equals("-threads"))
+				threads = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-maxQueue"))
+				maxQueue = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-cache"))
+				cacheDirectory = new File(args[++i]);
+			else if (args[i].equals("-cacheSize"))
+				cacheSize = Long.parseLong(args[++i]);
+			else
+				i++;
+		AnalysisCache analysisCache = cacheDirectory == null ? null
+				: new AnalysisCache(cacheDirectory, cacheSize * 1024 * 1024);
+		if (args[0].equals("-server")) {
+			ExtractionServer server = new ExtractionServer(Integer.parseInt(args[1]), threads, maxQueue, loadOptions,
+					analysisCache);
+			server.start();
+			System.out.println("Serving /xml and /txt at http://" + server.getAddress().getHostString() + ":"
+					+ server.getAddress().getPort());
 			return;
 		}
-		PDFReader reader = new PDFReader(new File(args[1]).toURI().toURL(), new MainPDFComponentLocator(), new MainBoxDetector(), new MainMarginDetector());
-		if (args[0].equals("-toXML"))
-			writeStringToFile(new File(args[2]), reader.toXML(), "UTF-8");
-		else
-			writeLines(new File(args[2]), "UTF-8", reader.toTextLines());
+		BatchPDFReader.Format format = BatchPDFReader.Format.TXT;
+		if (args[0].equals("-toXML") || args[0].equals("-batchXML"))
+			format = BatchPDFReader.Format.XML;
+		else if (args[0].equals("-toJSON") || args[0].equals("-batchJSON"))
+			format = compact ? BatchPDFReader.Format.COMPACT_JSON : BatchPDFReader.Format.JSON;
+		if (args[0].startsWith("-batch")) {
+			BatchPDFReader batchReader = new BatchPDFReader(format, threads, loadOptions, analysisCache, System.out);
+			if (batchReader.convert(BatchPDFReader.sourceFiles(new File(args[1])), new File(args[2])) > 0)
+				System.exit(1);
+		} else
+			new BatchPDFReader(format, 1, loadOptions, analysisCache, System.out).convert(new File(args[1]), new File(args[2]));
 	}
 }
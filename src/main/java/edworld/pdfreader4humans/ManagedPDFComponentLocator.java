@@ -0,0 +1,23 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * Component locator that keeps state for the documents it reads and has
+ * settings that change the components it locates. PDFReader releases each
+ * document it is done with and adds the settings to the keys of an
+ * AnalysisCache.
+ */
+public interface ManagedPDFComponentLocator extends PDFComponentLocator {
+	/**
+	 * Forgets what was kept for the pages of the document, which is about to
+	 * be closed.
+	 */
+	void release(PDDocument doc);
+
+	/**
+	 * @return description of the settings that change the located components
+	 */
+	String getConfiguration();
+}
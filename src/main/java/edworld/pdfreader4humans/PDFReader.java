@@ -8,39 +8,91 @@ import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static java.lang.Math.round;
 import static java.util.Collections.sort;
-import static java.util.regex.Matcher.quoteReplacement;
 
 import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.StringReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.regex.Matcher;
 
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 
+import edworld.pdfreader4humans.StageListener.Stage;
+import edworld.pdfreader4humans.util.ComponentArrays;
+import edworld.pdfreader4humans.util.ContainerIndex;
+import edworld.pdfreader4humans.util.DisjointSets;
+import edworld.pdfreader4humans.util.EmptyLineRemovingWriter;
+import edworld.pdfreader4humans.util.JSONWriter;
+import edworld.pdfreader4humans.util.LoadOptions;
+import edworld.pdfreader4humans.util.OverlapSearch;
 import edworld.pdfreader4humans.util.PDFUtil;
+import edworld.pdfreader4humans.util.StageClock;
+import edworld.pdfreader4humans.util.TaskGroup;
 
-public class PDFReader {
+public class PDFReader implements Closeable {
 	protected static final String HYPHEN = "-";
 	protected static final String SPACE = " ";
 	protected static final String UTF_8 = "UTF-8";
 	protected static final String LINE_BREAK = System.getProperty("line.separator");
+	private static final int MAX_FONTS = 256;
+	private static final Map<String, Font> FONTS = new LinkedHashMap<String, Font>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Font> eldest) {
+			return size() > MAX_FONTS;
+		}
+	};
 	protected URL url;
 	protected float tolerance;
+	protected LoadOptions loadOptions;
+	protected StageListener stageListener = StageListener.NONE;
 	protected List<List<Component>> firstLevel = new ArrayList<List<Component>>();
-	protected Map<String, String> templateMap = new HashMap<String, String>();
+	protected List<PageGeometry> pageGeometries = new ArrayList<PageGeometry>();
+	/**
+	 * @deprecated templates are shared by all readers through Template.get
+	 */
+	@Deprecated
+	protected Map<String, String> templateMap = new ConcurrentHashMap<String, String>();
+	protected PDDocument lazyDoc;
+	protected PDFComponentLocator componentLocator;
+	protected BoxDetector boxDetector;
+	protected MarginDetector marginDetector;
+	protected Map<Integer, List<Component>> cachedPages;
+	private Map<Integer, FutureTask<List<Component>>> pendingPages;
+	private Queue<PDDocument> idleLazyDocs;
+	private List<PDDocument> lazyDocs;
+	private int borrowedLazyDocs;
+	private int lazyPageCount;
+	private boolean closed;
 	protected Component lastContainer;
 	protected TextComponent lastComponent;
 
@@ -62,7 +114,7 @@ public class PDFReader {
 	 */
 	public PDFReader(URL url, PDFComponentLocator componentLocator, BoxDetector boxDetector,
 			MarginDetector marginDetector) throws IOException {
-		this(url, componentLocator, boxDetector, marginDetector, 0);
+		this(url, componentLocator, boxDetector, marginDetector, new ReaderOptions());
 	}
 
 	/**
@@ -85,32 +137,401 @@ public class PDFReader {
 	 */
 	public PDFReader(URL url, PDFComponentLocator componentLocator, BoxDetector boxDetector,
 			MarginDetector marginDetector, float tolerance) throws IOException {
+		this(url, componentLocator, boxDetector, marginDetector, new ReaderOptions().tolerance(tolerance));
+	}
+
+	/**
+	 * Class responsible for reading PDF contents in the same order a human
+	 * would read them, as the options say: analysing every page upfront, on
+	 * the calling thread or on an executor, or else each page only when it is
+	 * first requested, keeping the document open until the reader is closed.
+	 * 
+	 * @param url
+	 *            the PDF's location
+	 * @param componentLocator
+	 *            an instance of a PDFComponentLocator subclass such as
+	 *            MainPDFComponentLocator
+	 * @param boxDetector
+	 *            an instance of a BoxDetector subclass such as MainBoxDetector
+	 * @param marginDetector
+	 *            an instance of a MarginDetector subclass such as
+	 *            MainMarginDetector
+	 * @param options
+	 *            tolerance, executor, loading, measuring, caching and on
+	 *            demand analysis of the pages
+	 * @throws IOException
+	 */
+	public PDFReader(URL url, PDFComponentLocator componentLocator, BoxDetector boxDetector,
+			MarginDetector marginDetector, ReaderOptions options) throws IOException {
+		if (options.isOnDemand() && (options.getExecutor() != null || options.getAnalysisCache() != null))
+			throw new IllegalArgumentException("Pages analysed on demand are neither read by an executor nor cached");
 		this.url = url;
-		this.tolerance = tolerance;
-		PDDocument doc = PDFUtil.load(url);
+		this.tolerance = options.getTolerance();
+		this.loadOptions = options.getLoadOptions();
+		this.stageListener = options.getStageListener();
+		if (options.isOnDemand())
+			openOnDemand(componentLocator, boxDetector, marginDetector, options.getMaxCachedPages());
+		else
+			analyseAllPages(componentLocator, boxDetector, marginDetector, options.getExecutor(),
+					options.getAnalysisCache());
+	}
+
+	private void analyseAllPages(PDFComponentLocator componentLocator, BoxDetector boxDetector,
+			MarginDetector marginDetector, ExecutorService executor, AnalysisCache analysisCache)
+			throws IOException {
+		String cacheKey = null;
+		if (analysisCache != null) {
+			cacheKey = analysisCache.key(url, configuration(componentLocator, boxDetector, marginDetector));
+			AnalysisCache.Analysis analysis = analysisCache.load(cacheKey);
+			if (analysis != null) {
+				pageGeometries.addAll(analysis.getPageGeometries());
+				firstLevel.addAll(analysis.getFirstLevel());
+				return;
+			}
+		}
+		PDDocument doc = PDFUtil.load(url, loadOptions);
+		if (executor == null)
+			try {
+				readAllPages(doc, componentLocator, boxDetector, marginDetector);
+			} finally {
+				release(componentLocator, doc);
+				doc.close();
+			}
+		else
+			readAllPages(doc, componentLocator, boxDetector, marginDetector, executor);
+		if (analysisCache != null)
+			analysisCache.store(cacheKey, new AnalysisCache.Analysis(pageGeometries, firstLevel));
+	}
+
+	private void openOnDemand(PDFComponentLocator componentLocator, BoxDetector boxDetector,
+			MarginDetector marginDetector, final int maxCachedPages) throws IOException {
+		this.componentLocator = componentLocator;
+		this.boxDetector = boxDetector;
+		this.marginDetector = marginDetector;
+		this.cachedPages = new LinkedHashMap<Integer, List<Component>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, List<Component>> eldest) {
+				return size() > maxCachedPages;
+			}
+		};
+		lazyDoc = PDFUtil.load(url, loadOptions);
+		lazyPageCount = lazyDoc.getNumberOfPages();
+		pendingPages = new HashMap<Integer, FutureTask<List<Component>>>();
+		idleLazyDocs = new ArrayDeque<PDDocument>();
+		idleLazyDocs.add(lazyDoc);
+		lazyDocs = new ArrayList<PDDocument>();
+		lazyDocs.add(lazyDoc);
+	}
+
+	/**
+	 * @return description of the components and settings that the analysis
+	 *         of a PDF depends on, which is part of the key of an
+	 *         AnalysisCache
+	 */
+	protected String configuration(PDFComponentLocator componentLocator, BoxDetector boxDetector,
+			MarginDetector marginDetector) {
+		String locator = componentLocator.getClass().getName();
+		if (componentLocator instanceof ManagedPDFComponentLocator)
+			locator += " " + ((ManagedPDFComponentLocator) componentLocator).getConfiguration();
+		return locator + ";" + boxDetector.getClass().getName() + ";" + marginDetector.getClass().getName() + ";"
+				+ getClass().getName() + ";" + Float.floatToIntBits(tolerance);
+	}
+
+	/**
+	 * Reader of an analysis saved by writeAnalysis, which is loaded without
+	 * the PDF. Without the PDF's location, page images cannot be created.
+	 * 
+	 * @param analysisReader
+	 *            the saved analysis, which may be closed afterwards
+	 * @throws IOException
+	 */
+	public PDFReader(AnalysisReader analysisReader) throws IOException {
+		for (int pageNumber = 1; pageNumber <= analysisReader.getNumberOfPages(); pageNumber++) {
+			pageGeometries.add(analysisReader.getPageGeometry(pageNumber));
+			firstLevel.add(analysisReader.getFirstLevelComponents(pageNumber));
+		}
+	}
+
+	public int getNumberOfPages() {
+		return lazyDoc == null ? firstLevel.size() : lazyPageCount;
+	}
+
+	/**
+	 * In a reader that analyses pages on demand, the cache is only locked to
+	 * look pages up and to store them. Different pages are analysed at the
+	 * same time on copies of the document, while threads asking for a page
+	 * that is being analysed wait for that analysis.
+	 */
+	public List<Component> getFirstLevelComponents(int pageNumber) {
+		if (lazyDoc == null)
+			return firstLevel.get(pageNumber - 1);
+		FutureTask<List<Component>> analysis;
+		boolean analysing = false;
+		synchronized (cachedPages) {
+			List<Component> components = cachedPages.get(pageNumber);
+			if (components != null)
+				return components;
+			analysis = pendingPages.get(pageNumber);
+			if (analysis == null) {
+				analysis = new FutureTask<List<Component>>(pageAnalysis(pageNumber - 1));
+				pendingPages.put(pageNumber, analysis);
+				analysing = true;
+			}
+		}
+		if (!analysing)
+			return analysedPage(analysis);
 		try {
-			readAllPages(doc, componentLocator, boxDetector, marginDetector);
+			analysis.run();
+			List<Component> components = analysedPage(analysis);
+			synchronized (cachedPages) {
+				cachedPages.put(pageNumber, components);
+			}
+			return components;
 		} finally {
-			doc.close();
+			synchronized (cachedPages) {
+				pendingPages.remove(pageNumber);
+			}
 		}
 	}
 
-	public List<Component> getFirstLevelComponents(int pageNumber) {
-		return firstLevel.get(pageNumber - 1);
+	private Callable<List<Component>> pageAnalysis(final int pageIndex) {
+		return new Callable<List<Component>>() {
+			public List<Component> call() throws IOException {
+				PDDocument doc = borrowLazyDoc();
+				try {
+					return readPage(new PDFPage(pageIndex, doc.getPage(pageIndex), doc), componentLocator,
+							boxDetector, marginDetector);
+				} finally {
+					returnLazyDoc(doc);
+				}
+			}
+		};
+	}
+
+	private List<Component> analysedPage(FutureTask<List<Component>> analysis) {
+		try {
+			return result(analysis);
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	/**
+	 * @return an open copy of the document that no other thread is using,
+	 *         loading another one when all copies are in use
+	 */
+	private PDDocument borrowLazyDoc() throws IOException {
+		synchronized (cachedPages) {
+			if (closed)
+				throw new IllegalStateException("The reader is closed");
+			borrowedLazyDocs++;
+			PDDocument doc = idleLazyDocs.poll();
+			if (doc != null)
+				return doc;
+		}
+		PDDocument doc = null;
+		try {
+			doc = PDFUtil.load(url, loadOptions);
+			synchronized (cachedPages) {
+				lazyDocs.add(doc);
+			}
+			return doc;
+		} finally {
+			if (doc == null)
+				returnLazyDoc(null);
+		}
+	}
+
+	private void returnLazyDoc(PDDocument doc) {
+		synchronized (cachedPages) {
+			if (doc != null)
+				idleLazyDocs.add(doc);
+			borrowedLazyDocs--;
+			cachedPages.notifyAll();
+		}
+	}
+
+	/**
+	 * Releases the documents kept open by a reader that analyses pages on
+	 * demand, after the analyses in progress are finished.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (lazyDoc != null)
+			synchronized (cachedPages) {
+				closed = true;
+				boolean interrupted = false;
+				while (borrowedLazyDocs > 0)
+					try {
+						cachedPages.wait();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				if (interrupted)
+					Thread.currentThread().interrupt();
+				for (PDDocument doc : lazyDocs) {
+					release(componentLocator, doc);
+					doc.close();
+				}
+				lazyDocs.clear();
+				idleLazyDocs.clear();
+				cachedPages.clear();
+			}
 	}
 
 	public String toXML() {
-		String output = template("pdfreader4humans.xml", 0);
-		String content = "";
-		for (int pageIndex = 0; pageIndex < firstLevel.size(); pageIndex++)
-			content += pageToXML(pageIndex + 1, firstLevel.get(pageIndex), 1);
-		return removeEmptyLines(output.replaceAll("\\$\\{content\\}", quoteReplacement(content)));
+		StringWriter writer = new StringWriter();
+		try {
+			writeXML(writer);
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+		return writer.toString();
+	}
+
+	/**
+	 * Streams the same document produced by toXML, page by page and
+	 * component by component, to an UTF-8 encoded output.
+	 * 
+	 * @param output
+	 *            the sink of the XML document, which is flushed but not closed
+	 * @throws IOException
+	 */
+	public void writeXML(OutputStream output) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(output, UTF_8));
+		writeXML(writer);
+		writer.flush();
+	}
+
+	/**
+	 * Streams the same document produced by toXML, page by page and
+	 * component by component.
+	 * 
+	 * @param writer
+	 *            the sink of the XML document, which is flushed but not closed
+	 * @throws IOException
+	 */
+	public void writeXML(Writer writer) throws IOException {
+		EmptyLineRemovingWriter output = new EmptyLineRemovingWriter(writer, LINE_BREAK);
+		Template.Part[] parts = template("pdfreader4humans.xml").getParts(0);
+		for (int i = 0; i < parts.length; i++) {
+			if (i > 0)
+				for (int pageNumber = 1; pageNumber <= getNumberOfPages(); pageNumber++)
+					writePage(output, pageNumber, getFirstLevelComponents(pageNumber), 1);
+			parts[i].write(output, null);
+		}
+		output.finish();
+	}
+
+	public String toJSON() {
+		return toJSON(false);
+	}
+
+	public String toJSON(boolean compact) {
+		StringWriter writer = new StringWriter();
+		try {
+			writeJSON(writer, compact);
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+		return writer.toString();
+	}
+
+	/**
+	 * Streams the same content of toXML as a JSON document to an UTF-8
+	 * encoded output.
+	 * 
+	 * @param output
+	 *            the sink of the JSON document, which is flushed but not closed
+	 * @param compact
+	 *            whether the document is written without any whitespace, or
+	 *            else indented
+	 * @throws IOException
+	 */
+	public void writeJSON(OutputStream output, boolean compact) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(output, UTF_8));
+		writeJSON(writer, compact);
+		writer.flush();
+	}
+
+	/**
+	 * Streams the same content of toXML as a JSON document, page by page and
+	 * component by component. Each component is an object with its type,
+	 * coordinates, type-specific fields and, if it has any, its children.
+	 * 
+	 * @param writer
+	 *            the sink of the JSON document, which is flushed but not closed
+	 * @param compact
+	 *            whether the document is written without any whitespace, or
+	 *            else indented
+	 * @throws IOException
+	 */
+	public void writeJSON(Writer writer, boolean compact) throws IOException {
+		JSONWriter json = new JSONWriter(writer, compact, LINE_BREAK);
+		json.beginObject().name("pages").beginArray();
+		for (int pageNumber = 1; pageNumber <= getNumberOfPages(); pageNumber++) {
+			json.beginObject().name("id").value(pageNumber).name("components").beginArray();
+			for (Component component : getFirstLevelComponents(pageNumber))
+				writeJSON(json, component);
+			json.endArray().endObject();
+		}
+		json.endArray().endObject();
+		if (!compact)
+			writer.write(LINE_BREAK);
+		json.flush();
+	}
+
+	protected void writeJSON(JSONWriter json, Component component) throws IOException {
+		json.beginObject().name("type").value(component.getType());
+		json.name("fromX").value(component.getFromX()).name("fromY").value(component.getFromY());
+		json.name("toX").value(component.getToX()).name("toY").value(component.getToY());
+		if (component instanceof TextComponent) {
+			TextComponent text = (TextComponent) component;
+			json.name("fontName").value(text.getFontName()).name("fontSize").value(text.getFontSize());
+			json.name("text").value(text.getText());
+		} else if (component instanceof GridComponent)
+			json.name("lineWidth").value(((GridComponent) component).getLineWidth());
+		else if (component instanceof BoxComponent)
+			json.name("lineWidth").value(((BoxComponent) component).getLineWidth());
+		if (!component.getChildren().isEmpty()) {
+			json.name("children").beginArray();
+			for (Component child : component.getChildren())
+				writeJSON(json, child);
+			json.endArray();
+		}
+		json.endObject();
+	}
+
+	/**
+	 * Streams the analysis page by page in the binary format of
+	 * AnalysisWriter, which AnalysisReader loads much faster than the XML. If
+	 * a page cannot be analysed or written, the output is left without its
+	 * index, so AnalysisReader rejects it.
+	 * 
+	 * @param output
+	 *            the sink of the analysis, which is flushed but not closed
+	 * @throws IOException
+	 */
+	public void writeAnalysis(OutputStream output) throws IOException {
+		AnalysisWriter writer = new AnalysisWriter(new CloseShieldOutputStream(output));
+		boolean written = false;
+		try {
+			for (int pageNumber = 1; pageNumber <= getNumberOfPages(); pageNumber++)
+				writer.writePage(getPageGeometry(pageNumber), getFirstLevelComponents(pageNumber));
+			written = true;
+		} finally {
+			if (!written)
+				writer.abort();
+			writer.close();
+		}
 	}
 
 	public List<String> toTextLines() {
 		List<String> lines = new ArrayList<String>();
-		for (int pageIndex = 0; pageIndex < firstLevel.size(); pageIndex++)
-			lines.addAll(pageToTextLines(pageIndex + 1, firstLevel.get(pageIndex)));
+		for (int pageNumber = 1; pageNumber <= getNumberOfPages(); pageNumber++)
+			lines.addAll(pageToTextLines(pageNumber, getFirstLevelComponents(pageNumber)));
 		return lines;
 	}
 
@@ -182,33 +603,160 @@ public class PDFReader {
 		return text1 + SPACE + text2;
 	}
 
+	/**
+	 * @deprecated writeXML no longer calls this method, so overriding it has
+	 *             no effect on the output; override write or writePage instead
+	 */
+	@Deprecated
 	protected String removeEmptyLines(String text) {
 		return text.replaceAll(LINE_BREAK + LINE_BREAK, LINE_BREAK);
 	}
 
+	/**
+	 * @deprecated writeXML no longer calls this method, so overriding it has
+	 *             no effect on the output; override write or writePage instead
+	 */
+	@Deprecated
 	protected String pageToXML(int pageNumber, List<Component> pageFirstLevelComponents, int indentLevel) {
-		String pageTemplate = template("pdfreader4humans-page.xml", indentLevel);
-		String content = "";
-		for (Component component : pageFirstLevelComponents)
-			content += output(component, indentLevel + 1);
-		return pageTemplate.replaceAll("\\$\\{pageNumber\\}", String.valueOf(pageNumber)).replaceAll("\\$\\{content\\}",
-				quoteReplacement(content));
+		StringWriter writer = new StringWriter();
+		try {
+			writePage(writer, pageNumber, pageFirstLevelComponents, indentLevel);
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+		return writer.toString();
+	}
+
+	protected void writePage(Writer writer, final int pageNumber, List<Component> pageFirstLevelComponents,
+			int indentLevel) throws IOException {
+		Template.Fields pageFields = new Template.Fields() {
+			@Override
+			public boolean appendField(String fieldName, Appendable output) throws IOException {
+				if (!fieldName.equals("pageNumber"))
+					return false;
+				output.append(String.valueOf(pageNumber));
+				return true;
+			}
+		};
+		Template.Part[] parts = template("pdfreader4humans-page.xml").getParts(indentLevel);
+		for (int i = 0; i < parts.length; i++) {
+			if (i > 0)
+				for (Component component : pageFirstLevelComponents)
+					write(writer, component, indentLevel + 1);
+			parts[i].write(writer, pageFields);
+		}
 	}
 
+	/**
+	 * @deprecated writeXML no longer calls this method, so overriding it has
+	 *             no effect on the output; override write or writePage instead
+	 */
+	@Deprecated
 	protected String output(Component component, int indentLevel) {
-		String componentTemplate = template("pdfreader4humans-" + component.getType() + ".xml", indentLevel);
-		String content = "";
-		for (Component child : component.getChildren())
-			content += output(child, indentLevel + 1);
-		return component.output(componentTemplate).replaceAll("\\$\\{content\\}", quoteReplacement(content));
+		StringWriter writer = new StringWriter();
+		try {
+			write(writer, component, indentLevel);
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+		return writer.toString();
+	}
+
+	protected void write(Writer writer, Component component, int indentLevel) throws IOException {
+		Template.Part[] parts = template("pdfreader4humans-" + component.getType() + ".xml").getParts(indentLevel);
+		for (int i = 0; i < parts.length; i++) {
+			if (i > 0)
+				for (Component child : component.getChildren())
+					write(writer, child, indentLevel + 1);
+			parts[i].write(writer, component);
+		}
 	}
 
 	public BufferedImage createPageImage(int pageNumber, int scaling, Color inkColor, Color backgroundColor,
 			boolean showStructure) throws IOException {
-		Map<String, Font> fonts = new HashMap<String, Font>();
-		PDRectangle cropBox = getPageCropBox(pageNumber);
+		PDRectangle cropBox = getPageGeometry(pageNumber).getCropBox();
 		BufferedImage image = new BufferedImage(round(cropBox.getWidth() * scaling),
 				round(cropBox.getHeight() * scaling), TYPE_INT_ARGB);
+		drawPage(pageNumber, image, scaling, inkColor, backgroundColor, showStructure);
+		return image;
+	}
+
+	/**
+	 * Renders every page into the sink, as createPageImage would.
+	 * 
+	 * @see #createPageImages(int, int, int, Color, Color, boolean,
+	 *      ExecutorService, PageImageSink)
+	 */
+	public void createPageImages(int scaling, Color inkColor, Color backgroundColor, boolean showStructure,
+			ExecutorService executor, PageImageSink sink) throws IOException {
+		createPageImages(1, getNumberOfPages(), scaling, inkColor, backgroundColor, showStructure, executor, sink);
+	}
+
+	/**
+	 * Renders the pages from firstPageNumber to lastPageNumber into the sink,
+	 * as createPageImage would. Images of the same size are drawn into pooled
+	 * buffers, so only as many images are allocated as pages are rendered at
+	 * the same time.
+	 * 
+	 * @param executor
+	 *            executor on which pages are rendered, or null to render them
+	 *            one after another on the calling thread
+	 * @param sink
+	 *            receiver of the images, called on the rendering threads
+	 * @throws IOException
+	 */
+	public void createPageImages(int firstPageNumber, int lastPageNumber, final int scaling, final Color inkColor,
+			final Color backgroundColor, final boolean showStructure, ExecutorService executor,
+			final PageImageSink sink) throws IOException {
+		final ConcurrentMap<Dimension, Queue<BufferedImage>> imagePool;
+		imagePool = new ConcurrentHashMap<Dimension, Queue<BufferedImage>>();
+		TaskGroup<Void> pages = executor == null ? null : new TaskGroup<Void>(executor);
+		try {
+			for (int pageNumber = firstPageNumber; pageNumber <= lastPageNumber; pageNumber++) {
+				final int currentPageNumber = pageNumber;
+				if (executor == null)
+					renderPage(pageNumber, scaling, inkColor, backgroundColor, showStructure, imagePool, sink);
+				else
+					pages.submit(new Callable<Void>() {
+						public Void call() throws IOException {
+							renderPage(currentPageNumber, scaling, inkColor, backgroundColor, showStructure,
+									imagePool, sink);
+							return null;
+						}
+					});
+			}
+			if (pages != null)
+				for (Future<Void> page : pages.getFutures())
+					result(page);
+		} finally {
+			if (pages != null)
+				pages.cancelAndAwait();
+		}
+	}
+
+	private void renderPage(int pageNumber, int scaling, Color inkColor, Color backgroundColor,
+			boolean showStructure, ConcurrentMap<Dimension, Queue<BufferedImage>> imagePool, PageImageSink sink)
+			throws IOException {
+		PDRectangle cropBox = getPageGeometry(pageNumber).getCropBox();
+		Dimension size = new Dimension(round(cropBox.getWidth() * scaling), round(cropBox.getHeight() * scaling));
+		Queue<BufferedImage> images = imagePool.get(size);
+		if (images == null) {
+			imagePool.putIfAbsent(size, new ConcurrentLinkedQueue<BufferedImage>());
+			images = imagePool.get(size);
+		}
+		BufferedImage image = images.poll();
+		if (image == null)
+			image = new BufferedImage(size.width, size.height, TYPE_INT_ARGB);
+		try {
+			drawPage(pageNumber, image, scaling, inkColor, backgroundColor, showStructure);
+			sink.write(pageNumber, image);
+		} finally {
+			images.add(image);
+		}
+	}
+
+	protected void drawPage(int pageNumber, BufferedImage image, int scaling, Color inkColor, Color backgroundColor,
+			boolean showStructure) {
 		Graphics2D graphics = image.createGraphics();
 		graphics.setBackground(backgroundColor);
 		graphics.clearRect(0, 0, image.getWidth(), image.getHeight());
@@ -217,40 +765,118 @@ public class PDFReader {
 		graphics.setColor(inkColor);
 		graphics.scale(scaling, scaling);
 		for (Component component : getFirstLevelComponents(pageNumber))
-			draw(component, graphics, inkColor, backgroundColor, showStructure, fonts);
+			draw(component, graphics, inkColor, backgroundColor, showStructure);
 		graphics.dispose();
-		return image;
 	}
 
 	protected void readAllPages(PDDocument doc, PDFComponentLocator componentLocator, BoxDetector boxDetector,
 			MarginDetector marginDetector) throws IOException {
 		int index = 0;
 		for (PDPage page : doc.getPages()) {
+			pageGeometries.add(new PageGeometry(page));
 			firstLevel.add(readPage(new PDFPage(index, page, doc), componentLocator, boxDetector, marginDetector));
 			index++;
 		}
 	}
 
+	protected void readAllPages(PDDocument doc, final PDFComponentLocator componentLocator,
+			final BoxDetector boxDetector, final MarginDetector marginDetector, ExecutorService executor)
+			throws IOException {
+		final Queue<PDDocument> idleDocs = new ConcurrentLinkedQueue<PDDocument>();
+		final Queue<PDDocument> allDocs = new ConcurrentLinkedQueue<PDDocument>();
+		idleDocs.add(doc);
+		allDocs.add(doc);
+		TaskGroup<List<Component>> pages = new TaskGroup<List<Component>>(executor);
+		for (PDPage page : doc.getPages())
+			pageGeometries.add(new PageGeometry(page));
+		int pageCount = pageGeometries.size();
+		try {
+			for (int index = 0; index < pageCount; index++) {
+				final int pageIndex = index;
+				pages.submit(new Callable<List<Component>>() {
+					public List<Component> call() throws IOException {
+						PDDocument workerDoc = idleDocs.poll();
+						if (workerDoc == null) {
+							workerDoc = PDFUtil.load(url, loadOptions);
+							allDocs.add(workerDoc);
+						}
+						try {
+							return readPage(new PDFPage(pageIndex, workerDoc.getPage(pageIndex), workerDoc),
+									componentLocator, boxDetector, marginDetector);
+						} finally {
+							idleDocs.add(workerDoc);
+						}
+					}
+				});
+			}
+			for (Future<List<Component>> page : pages.getFutures())
+				firstLevel.add(result(page));
+		} finally {
+			pages.cancelAndAwait();
+			for (PDDocument workerDoc : allDocs) {
+				release(componentLocator, workerDoc);
+				workerDoc.close();
+			}
+		}
+	}
+
+	private void release(PDFComponentLocator componentLocator, PDDocument doc) {
+		if (componentLocator instanceof ManagedPDFComponentLocator)
+			((ManagedPDFComponentLocator) componentLocator).release(doc);
+	}
+
+	private <T> T result(Future<T> page) throws IOException {
+		try {
+			return page.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
 	protected List<Component> readPage(PDFPage page, PDFComponentLocator componentLocator, BoxDetector boxDetector,
 			MarginDetector marginDetector) throws IOException {
+		StageClock clock = StageClock.start(stageListener, page.getIndex() + 1);
 		List<Component> firstLevelComponents = new ArrayList<Component>();
 		List<GridComponent> gridComponents = componentLocator.locateGridComponents(page);
+		clock.lap(Stage.GRID_LOCATION, gridComponents.size());
 		List<TextComponent> textComponents = componentLocator.locateTextComponents(page);
+		clock.lap(Stage.TEXT_LOCATION, textComponents.size());
 		List<BoxComponent> boxes = boxDetector.detectBoxes(gridComponents);
-		List<Component> containers = new ArrayList<Component>();
-		containers.addAll(gridComponents);
-		containers.addAll(boxes);
-		List<Component> groups = groupConnectedComponents(containers);
-		containers.addAll(groups);
-		firstLevelComponents.addAll(groups);
-		addComponents(boxes, firstLevelComponents, groups);
-		addComponents(gridComponents, firstLevelComponents, containers);
+		clock.lap(Stage.BOX_DETECTION, boxes.size());
+		ComponentArrays arrays = new ComponentArrays(gridComponents.size() + boxes.size() + textComponents.size());
+		arrays.addAll(gridComponents);
+		int boxesStart = arrays.size();
+		arrays.addAll(boxes);
+		int groupsStart = arrays.size();
+		groupConnectedComponents(arrays, 0, groupsStart);
+		int marginsStart = arrays.size();
+		clock.lap(Stage.GROUPING, marginsStart - groupsStart);
+		findContainers(arrays, boxesStart, groupsStart, groupsStart, marginsStart);
+		findContainers(arrays, 0, boxesStart, 0, marginsStart);
+		arrays.attach(groupsStart, marginsStart, firstLevelComponents);
+		arrays.attach(boxesStart, groupsStart, firstLevelComponents);
+		arrays.attach(0, boxesStart, firstLevelComponents);
+		clock.lap(Stage.COMPONENT_ASSIGNMENT, groupsStart);
 		List<MarginComponent> margins = marginDetector.detectMargins(group(textComponents, firstLevelComponents));
-		containers.addAll(margins);
-		firstLevelComponents.addAll(margins);
-		addComponents(textComponents, firstLevelComponents, containers);
-		sortRecursively(firstLevelComponents);
+		clock.lap(Stage.MARGIN_DETECTION, margins.size());
+		arrays.addAll(margins);
+		int textsStart = arrays.size();
+		arrays.addAll(textComponents);
+		findContainers(arrays, textsStart, arrays.size(), 0, textsStart);
+		clock.lap(Stage.COMPONENT_ASSIGNMENT, textComponents.size());
+		attachSorted(arrays, firstLevelComponents, groupsStart, marginsStart, boxesStart, groupsStart, 0,
+				boxesStart, marginsStart, arrays.size());
+		clock.lap(Stage.SORT, firstLevelComponents.size());
 		expandMargins(firstLevelComponents);
+		clock.lap(Stage.MARGIN_EXPANSION, firstLevelComponents.size());
+		clock.finish();
 		return firstLevelComponents;
 	}
 
@@ -287,6 +913,24 @@ public class PDFReader {
 		return false;
 	}
 
+	/**
+	 * Attaches the components stored in the arrays to their containers, or to
+	 * the roots, and sorts the roots and each list of children as
+	 * sortRecursively does, reading the coordinates from the arrays.
+	 *
+	 * @param ranges
+	 *            pairs of fromIndex (inclusive) and toIndex (exclusive) of the
+	 *            components, in the order of the siblings before sorting
+	 */
+	protected void attachSorted(ComponentArrays arrays, List<Component> roots, int... ranges) {
+		arrays.attachInReadingOrder(roots, ranges);
+	}
+
+	/**
+	 * @deprecated readPage sorts the components through attachSorted, so
+	 *             overriding this method does not change the pages
+	 */
+	@Deprecated
 	protected void sortRecursively(List<Component> components) {
 		if (components.size() > 0)
 			Component.smartSort(components);
@@ -297,78 +941,110 @@ public class PDFReader {
 	protected List<? extends Component> group(List<TextComponent> textComponents, List<Component> layoutComponents) {
 		List<Component> list = new ArrayList<Component>();
 		list.addAll(layoutComponents);
+		ContainerIndex<Component> index = new ContainerIndex<Component>(layoutComponents, tolerance);
 		for (Component component : textComponents)
-			if (findContainer(component, layoutComponents) == null)
+			if (index.findContainer(component) == null)
 				list.add(component);
 		return list;
 	}
 
+	/**
+	 * @deprecated readPage groups the components through
+	 *             groupConnectedComponents(ComponentArrays, int, int), so
+	 *             overriding this method does not change the pages
+	 */
+	@Deprecated
 	protected List<Component> groupConnectedComponents(List<Component> components) {
-		Map<Component, Integer> groupMap = new HashMap<Component, Integer>();
-		int lastGroupIndex = buildGroupMap(components, groupMap);
-		List<Component> groups = new ArrayList<Component>(lastGroupIndex);
-		for (int groupIndex = 1; groupIndex <= lastGroupIndex; groupIndex++)
-			createGroup(groupIndex, groupMap, groups);
-		return groups;
+		ConnectedGroups connectedGroups = new ConnectedGroups(components.size());
+		OverlapSearch.INTERSECTION.forEachOverlappingPair(components, connectedGroups);
+		return createGroups(components, connectedGroups.sets, connectedGroups.groupIndexes,
+				connectedGroups.lastGroupIndex);
 	}
 
-	protected void createGroup(int groupIndex, Map<Component, Integer> groupMap, List<Component> groups) {
-		float fromX = Float.POSITIVE_INFINITY;
-		float fromY = Float.POSITIVE_INFINITY;
-		float toX = Float.NEGATIVE_INFINITY;
-		float toY = Float.NEGATIVE_INFINITY;
-		for (Component component : groupMap.keySet())
-			if (groupMap.get(component) == groupIndex) {
-				fromX = min(component.getFromX(), fromX);
-				fromY = min(component.getFromY(), fromY);
-				toX = max(component.getToX(), toX);
-				toY = max(component.getToY(), toY);
-			}
-		if (fromX != Float.POSITIVE_INFINITY || fromY != Float.POSITIVE_INFINITY || toX != Float.NEGATIVE_INFINITY
-				|| toY != Float.NEGATIVE_INFINITY)
-			groups.add(new GroupComponent(fromX, fromY, toX, toY));
-	}
-
-	private int buildGroupMap(List<Component> components, Map<Component, Integer> groupMap) {
-		int lastGroupIndex = 0;
-		for (int i = 0; i < components.size(); i++)
-			for (int j = i + 1; j < components.size(); j++) {
-				Component component1 = components.get(i);
-				Component component2 = components.get(j);
-				if (component1.intersects(component2))
-					lastGroupIndex = mapToSameGroupIndex(component1, component2, lastGroupIndex, groupMap);
-			}
-		return lastGroupIndex;
+	/**
+	 * Adds to the arrays a group for each set of connected components among
+	 * the ones stored from fromIndex (inclusive) to toIndex (exclusive),
+	 * looking for intersections in the arrays.
+	 */
+	protected void groupConnectedComponents(ComponentArrays arrays, int fromIndex, int toIndex) {
+		ConnectedGroups connectedGroups = new ConnectedGroups(toIndex - fromIndex);
+		OverlapSearch.forEachOverlappingPair(arrays.intersections(fromIndex, toIndex), connectedGroups);
+		arrays.addAll(createGroups(arrays.subList(fromIndex, toIndex), connectedGroups.sets,
+				connectedGroups.groupIndexes, connectedGroups.lastGroupIndex));
+	}
+
+	/**
+	 * Joins the intersecting components as they are found, numbering the
+	 * groups as the pairwise scan over the list does.
+	 */
+	private static class ConnectedGroups implements OverlapSearch.PairHandler {
+		private DisjointSets sets;
+		private int[] groupIndexes;
+		private int lastGroupIndex;
+
+		private ConnectedGroups(int size) {
+			sets = new DisjointSets(size);
+			groupIndexes = new int[size];
+		}
+
+		@Override
+		public void pair(int index1, int index2) {
+			int groupIndex1 = groupIndexes[sets.find(index1)];
+			int groupIndex2 = groupIndexes[sets.find(index2)];
+			int groupIndex = groupIndex1 != 0 ? groupIndex1 : (groupIndex2 != 0 ? groupIndex2 : ++lastGroupIndex);
+			groupIndexes[sets.union(index1, index2)] = groupIndex;
+		}
 	}
 
-	private int mapToSameGroupIndex(Component component1, Component component2, int lastGroupIndex,
-			Map<Component, Integer> groupMap) {
-		Integer groupIndex1 = groupMap.get(component1);
-		Integer groupIndex2 = groupMap.get(component2);
-		if (groupIndex1 == null && groupIndex2 == null) {
-			lastGroupIndex++;
-			groupMap.put(component1, lastGroupIndex);
-			groupMap.put(component2, lastGroupIndex);
-		} else if (groupIndex1 != null && groupIndex2 == null) {
-			groupMap.put(component2, groupIndex1);
-		} else if (groupIndex1 == null && groupIndex2 != null) {
-			groupMap.put(component1, groupIndex2);
-		} else if (groupIndex1 != groupIndex2) {
-			joinGroups(groupIndex1, groupIndex2, groupMap);
+	protected List<Component> createGroups(List<Component> components, DisjointSets sets, int[] groupIndexes,
+			int lastGroupIndex) {
+		float[] fromX = new float[lastGroupIndex + 1];
+		float[] fromY = new float[lastGroupIndex + 1];
+		float[] toX = new float[lastGroupIndex + 1];
+		float[] toY = new float[lastGroupIndex + 1];
+		Arrays.fill(fromX, Float.POSITIVE_INFINITY);
+		Arrays.fill(fromY, Float.POSITIVE_INFINITY);
+		Arrays.fill(toX, Float.NEGATIVE_INFINITY);
+		Arrays.fill(toY, Float.NEGATIVE_INFINITY);
+		for (int i = 0; i < components.size(); i++) {
+			int groupIndex = groupIndexes[sets.find(i)];
+			Component component = components.get(i);
+			fromX[groupIndex] = min(component.getFromX(), fromX[groupIndex]);
+			fromY[groupIndex] = min(component.getFromY(), fromY[groupIndex]);
+			toX[groupIndex] = max(component.getToX(), toX[groupIndex]);
+			toY[groupIndex] = max(component.getToY(), toY[groupIndex]);
 		}
-		return lastGroupIndex;
+		List<Component> groups = new ArrayList<Component>();
+		for (int groupIndex = 1; groupIndex <= lastGroupIndex; groupIndex++)
+			if (fromX[groupIndex] != Float.POSITIVE_INFINITY || fromY[groupIndex] != Float.POSITIVE_INFINITY
+					|| toX[groupIndex] != Float.NEGATIVE_INFINITY || toY[groupIndex] != Float.NEGATIVE_INFINITY)
+				groups.add(new GroupComponent(fromX[groupIndex], fromY[groupIndex], toX[groupIndex], toY[groupIndex]));
+		return groups;
 	}
 
-	protected void joinGroups(Integer groupIndex1, Integer groupIndex2, Map<Component, Integer> groupMap) {
-		for (Component component : groupMap.keySet())
-			if (groupMap.get(component) == groupIndex2)
-				groupMap.put(component, groupIndex1);
+	/**
+	 * Links each component stored from fromIndex (inclusive) to toIndex
+	 * (exclusive) to its smallest container among the ones stored from
+	 * containersFrom (inclusive) to containersTo (exclusive).
+	 */
+	protected void findContainers(ComponentArrays arrays, int fromIndex, int toIndex, int containersFrom,
+			int containersTo) {
+		ContainerIndex<Component> index = new ContainerIndex<Component>(arrays, containersFrom, containersTo,
+				tolerance);
+		for (int i = fromIndex; i < toIndex; i++)
+			arrays.setParent(i, index.findContainer(i));
 	}
 
+	/**
+	 * @deprecated readPage assigns the components through findContainers and
+	 *             no longer calls this method
+	 */
+	@Deprecated
 	protected void addComponents(List<? extends Component> components, List<Component> targetList,
 			List<? extends Component> containers) {
+		ContainerIndex<Component> index = new ContainerIndex<Component>(containers, tolerance);
 		for (Component component : components) {
-			Component container = findContainer(component, containers);
+			Component container = index.findContainer(component);
 			if (container != null)
 				container.addChild(component);
 			else
@@ -376,6 +1052,11 @@ public class PDFReader {
 		}
 	}
 
+	/**
+	 * @deprecated readPage assigns the components through findContainers and
+	 *             no longer calls this method
+	 */
+	@Deprecated
 	protected Component findContainer(Component component, List<? extends Component> containers) {
 		Component container = null;
 		float area = Float.POSITIVE_INFINITY;
@@ -387,44 +1068,37 @@ public class PDFReader {
 		return container;
 	}
 
+	protected Template template(String templateFileName) {
+		return Template.get(templateFileName);
+	}
+
+	/**
+	 * @return the text of the template indented by the given number of tabs
+	 * @deprecated the writers no longer call this method, so overriding it has
+	 *             no effect on the output; override template(String) instead
+	 */
+	@Deprecated
 	protected String template(String templateFileName, int indentLevel) {
 		String template = templateMap.get(templateFileName);
-		if (template != null)
-			return indent(template, indentLevel);
-		InputStream input = getClass().getResourceAsStream("/templates/" + templateFileName);
-		try {
-			try {
-				template = IOUtils.toString(input, UTF_8);
-				templateMap.put(templateFileName, template);
-				return indent(template, indentLevel);
-			} finally {
-				input.close();
-			}
-		} catch (IOException e) {
-			throw new IllegalArgumentException(e);
+		if (template == null) {
+			template = template(templateFileName).getText();
+			templateMap.put(templateFileName, template);
 		}
+		return indent(template, indentLevel);
 	}
 
+	/**
+	 * @deprecated use Template.indent
+	 */
+	@Deprecated
 	protected String indent(String output, int indentLevel) {
-		try {
-			char[] tabs = new char[indentLevel];
-			Arrays.fill(tabs, '\t');
-			StringBuilder buffer = new StringBuilder();
-			for (String line : IOUtils.readLines(new StringReader(output)))
-				if (line.equals("${content}"))
-					buffer.append(line);
-				else
-					buffer.append(tabs).append(line).append(LINE_BREAK);
-			return buffer.toString();
-		} catch (IOException e) {
-			throw new IllegalArgumentException(e);
-		}
+		return Template.indent(output, indentLevel);
 	}
 
 	private void draw(Component component, Graphics2D graphics, Color inkColor, Color backgroundColor,
-			boolean showStructure, Map<String, Font> fonts) {
+			boolean showStructure) {
 		for (Component child : component.getChildren())
-			draw(child, graphics, inkColor, backgroundColor, showStructure, fonts);
+			draw(child, graphics, inkColor, backgroundColor, showStructure);
 		if (component instanceof BoxComponent && showStructure) {
 			graphics.setColor(boxColor(backgroundColor));
 			graphics.drawRect((int) component.getFromX(), (int) component.getFromY(), (int) component.getWidth(),
@@ -447,7 +1121,7 @@ public class PDFReader {
 			graphics.drawRect(round(component.getFromX()), round(component.getFromY()), round(component.getWidth()),
 					round(component.getHeight()));
 		else if (component instanceof TextComponent) {
-			graphics.setFont(font((TextComponent) component, fonts));
+			graphics.setFont(font((TextComponent) component));
 			graphics.drawString(((TextComponent) component).getText(), component.getFromX(), component.getToY());
 		}
 	}
@@ -464,25 +1138,42 @@ public class PDFReader {
 		return new Color(Color.YELLOW.getRGB() ^ inkColor.getRGB());
 	}
 
-	private Font font(TextComponent component, Map<String, Font> fonts) {
-		String key = component.getFontName() + ":" + component.getFontSize();
-		Font font = fonts.get(key);
-		if (font == null) {
-			String name = component.getFontName().contains("Times") ? "TimesRoman" : "Dialog";
-			int style = component.getFontName().contains("Bold") ? Font.BOLD
-					: (component.getFontName().contains("Italic") ? Font.ITALIC : Font.PLAIN);
-			font = new Font(name, style, (int) component.getFontSize());
-			fonts.put(key, font);
+	/**
+	 * @return the font drawn for the component, shared by all readers; fonts
+	 *         are keyed by what tells them apart rather than by font name,
+	 *         whose subset prefixes vary with each document
+	 */
+	private Font font(TextComponent component) {
+		String name = component.getFontName().contains("Times") ? "TimesRoman" : "Dialog";
+		int style = component.getFontName().contains("Bold") ? Font.BOLD
+				: (component.getFontName().contains("Italic") ? Font.ITALIC : Font.PLAIN);
+		int size = (int) component.getFontSize();
+		String key = name + ":" + style + ":" + size;
+		synchronized (FONTS) {
+			Font font = FONTS.get(key);
+			if (font == null) {
+				font = new Font(name, style, size);
+				FONTS.put(key, font);
+			}
+			return font;
 		}
-		return font;
 	}
 
-	private PDRectangle getPageCropBox(int pageIndex) throws IOException {
-		PDDocument doc = PDFUtil.load(url);
+	/**
+	 * @return the geometry of the page, captured while the document was read
+	 */
+	public PageGeometry getPageGeometry(int pageNumber) {
+		if (lazyDoc == null)
+			return pageGeometries.get(pageNumber - 1);
 		try {
-			return doc.getPages().get(pageIndex - 1).getCropBox();
-		} finally {
-			doc.close();
+			PDDocument doc = borrowLazyDoc();
+			try {
+				return new PageGeometry(doc.getPage(pageNumber - 1));
+			} finally {
+				returnLazyDoc(doc);
+			}
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
 		}
 	}
 }
@@ -0,0 +1,26 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Sink that encodes each page image as PNG into the stream opened for its
+ * page, closing the stream afterwards.
+ */
+public abstract class PNGPageImageSink implements PageImageSink {
+	protected abstract OutputStream openOutputStream(int pageNumber) throws IOException;
+
+	@Override
+	public void write(int pageNumber, BufferedImage image) throws IOException {
+		OutputStream output = openOutputStream(pageNumber);
+		try {
+			ImageIO.write(image, "png", output);
+		} finally {
+			output.close();
+		}
+	}
+}
@@ -0,0 +1,45 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+/**
+ * Crop box, media box and rotation of a page, copied from the document so
+ * they remain available after it is closed.
+ */
+public class PageGeometry {
+	private PDRectangle cropBox;
+	private PDRectangle mediaBox;
+	private int rotation;
+
+	public PageGeometry(PDPage page) {
+		this(copy(page.getCropBox()), copy(page.getMediaBox()), page.getRotation());
+	}
+
+	/**
+	 * Geometry made of the given rectangles, which are kept without copying.
+	 */
+	public PageGeometry(PDRectangle cropBox, PDRectangle mediaBox, int rotation) {
+		this.cropBox = cropBox;
+		this.mediaBox = mediaBox;
+		this.rotation = rotation;
+	}
+
+	public PDRectangle getCropBox() {
+		return cropBox;
+	}
+
+	public PDRectangle getMediaBox() {
+		return mediaBox;
+	}
+
+	public int getRotation() {
+		return rotation;
+	}
+
+	private static PDRectangle copy(PDRectangle rectangle) {
+		return new PDRectangle(rectangle.getLowerLeftX(), rectangle.getLowerLeftY(), rectangle.getWidth(),
+				rectangle.getHeight());
+	}
+}
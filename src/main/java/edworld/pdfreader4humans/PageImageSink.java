@@ -0,0 +1,14 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Receiver of the images rendered by PDFReader.createPageImages. It may be
+ * called from several threads at once, and each image is reused for another
+ * page once the call returns.
+ */
+public interface PageImageSink {
+	void write(int pageNumber, BufferedImage image) throws IOException;
+}
@@ -0,0 +1,122 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import java.util.concurrent.ExecutorService;
+
+import edworld.pdfreader4humans.util.LoadOptions;
+
+/**
+ * How a PDFReader reads a document. By default every page is analysed on the
+ * calling thread when the reader is created, with no tolerance, from a
+ * document loaded on the heap. Each setter returns the same options, so they
+ * can be chained.
+ */
+public class ReaderOptions {
+	private float tolerance;
+	private ExecutorService executor;
+	private LoadOptions loadOptions = LoadOptions.IN_MEMORY;
+	private StageListener stageListener = StageListener.NONE;
+	private AnalysisCache analysisCache;
+	private int maxCachedPages;
+
+	/**
+	 * @param tolerance
+	 *            tolerance used to verify containment of components
+	 */
+	public ReaderOptions tolerance(float tolerance) {
+		this.tolerance = tolerance;
+		return this;
+	}
+
+	/**
+	 * @param executor
+	 *            executor (e.g. a ForkJoinPool) on which pages are analysed;
+	 *            each worker reads from its own document handle, so the PDF is
+	 *            loaded from the url once per concurrent worker. When null,
+	 *            pages are analysed one after another on the calling thread.
+	 */
+	public ReaderOptions executor(ExecutorService executor) {
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * @param loadOptions
+	 *            how the PDF is loaded, e.g. LoadOptions.scratchFile to keep
+	 *            huge documents off the heap
+	 */
+	public ReaderOptions loadOptions(LoadOptions loadOptions) {
+		this.loadOptions = loadOptions;
+		return this;
+	}
+
+	/**
+	 * @param stageListener
+	 *            receiver of the cost of each stage of the analysis of each
+	 *            page, such as a StageReport; StageListener.NONE measures
+	 *            nothing
+	 */
+	public ReaderOptions stageListener(StageListener stageListener) {
+		this.stageListener = stageListener;
+		return this;
+	}
+
+	/**
+	 * @param analysisCache
+	 *            cache where the analysis of the same PDF with the same
+	 *            configuration is looked up before reading it, and stored
+	 *            after reading it; null for no cache
+	 */
+	public ReaderOptions analysisCache(AnalysisCache analysisCache) {
+		this.analysisCache = analysisCache;
+		return this;
+	}
+
+	/**
+	 * Analyses each page only when it is first requested, keeping the
+	 * document open until the reader is closed.
+	 *
+	 * @param maxCachedPages
+	 *            maximum number of analysed pages kept in memory; the least
+	 *            recently used page is evicted, and analysed again if it is
+	 *            requested afterwards
+	 */
+	public ReaderOptions maxCachedPages(int maxCachedPages) {
+		if (maxCachedPages < 1)
+			throw new IllegalArgumentException("At least one page must be cached: " + maxCachedPages);
+		this.maxCachedPages = maxCachedPages;
+		return this;
+	}
+
+	public float getTolerance() {
+		return tolerance;
+	}
+
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	public LoadOptions getLoadOptions() {
+		return loadOptions;
+	}
+
+	public StageListener getStageListener() {
+		return stageListener;
+	}
+
+	public AnalysisCache getAnalysisCache() {
+		return analysisCache;
+	}
+
+	/**
+	 * @return the maximum number of pages kept by a reader that analyses them
+	 *         on demand, or 0 when every page is analysed upfront
+	 */
+	public int getMaxCachedPages() {
+		return maxCachedPages;
+	}
+
+	public boolean isOnDemand() {
+		return maxCachedPages > 0;
+	}
+}
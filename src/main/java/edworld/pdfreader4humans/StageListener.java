@@ -0,0 +1,39 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+/**
+ * Receiver of the cost of each stage of the analysis of a page. It may be
+ * called from several threads at once when pages are analysed in parallel.
+ */
+public interface StageListener {
+	/**
+	 * Listener that ignores every measurement, for which the stages are not
+	 * even measured.
+	 */
+	StageListener NONE = new StageListener() {
+		@Override
+		public void stageMeasured(int pageNumber, Stage stage, long wallTime, long cpuTime, long allocatedBytes,
+				int elementCount) {
+		}
+	};
+
+	enum Stage {
+		GRID_LOCATION, TEXT_LOCATION, BOX_DETECTION, GROUPING, COMPONENT_ASSIGNMENT, MARGIN_DETECTION, SORT,
+		MARGIN_EXPANSION
+	}
+
+	/**
+	 * @param wallTime
+	 *            elapsed time in nanoseconds
+	 * @param cpuTime
+	 *            CPU time of the analysing thread in nanoseconds, or -1 if the
+	 *            JVM does not measure it
+	 * @param allocatedBytes
+	 *            bytes allocated by the analysing thread, or -1 if the JVM
+	 *            does not measure them
+	 * @param elementCount
+	 *            number of components produced by the stage
+	 */
+	void stageMeasured(int pageNumber, Stage stage, long wallTime, long cpuTime, long allocatedBytes,
+			int elementCount);
+}
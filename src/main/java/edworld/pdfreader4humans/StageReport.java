@@ -0,0 +1,121 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Listener that keeps every measurement of a document, to be written as a CSV
+ * report with one line per page and stage followed by the totals of each
+ * stage.
+ */
+public class StageReport implements StageListener {
+	private static final String LINE_BREAK = System.getProperty("line.separator");
+	private List<Measurement> measurements = new ArrayList<Measurement>();
+
+	@Override
+	public synchronized void stageMeasured(int pageNumber, Stage stage, long wallTime, long cpuTime,
+			long allocatedBytes, int elementCount) {
+		measurements.add(new Measurement(pageNumber, stage, wallTime, cpuTime, allocatedBytes, elementCount));
+	}
+
+	/**
+	 * @return the measurements ordered by page and stage
+	 */
+	public synchronized List<Measurement> getMeasurements() {
+		List<Measurement> list = new ArrayList<Measurement>(measurements);
+		Collections.sort(list, new Comparator<Measurement>() {
+			@Override
+			public int compare(Measurement measurement1, Measurement measurement2) {
+				if (measurement1.pageNumber != measurement2.pageNumber)
+					return measurement1.pageNumber < measurement2.pageNumber ? -1 : 1;
+				return measurement1.stage.compareTo(measurement2.stage);
+			}
+		});
+		return list;
+	}
+
+	/**
+	 * @return the sum of the measurements of each stage, with page number 0
+	 */
+	public List<Measurement> getTotals() {
+		Measurement[] totals = new Measurement[Stage.values().length];
+		for (Stage stage : Stage.values())
+			totals[stage.ordinal()] = new Measurement(0, stage, 0, 0, 0, 0);
+		for (Measurement measurement : getMeasurements()) {
+			Measurement total = totals[measurement.stage.ordinal()];
+			total.wallTime += measurement.wallTime;
+			total.cpuTime = sum(total.cpuTime, measurement.cpuTime);
+			total.allocatedBytes = sum(total.allocatedBytes, measurement.allocatedBytes);
+			total.elementCount += measurement.elementCount;
+		}
+		List<Measurement> list = new ArrayList<Measurement>();
+		Collections.addAll(list, totals);
+		return list;
+	}
+
+	private long sum(long total, long value) {
+		return total < 0 || value < 0 ? -1 : total + value;
+	}
+
+	public void write(Writer writer) throws IOException {
+		writer.write("page,stage,wallTimeNanos,cpuTimeNanos,allocatedBytes,elements" + LINE_BREAK);
+		for (Measurement measurement : getMeasurements())
+			writer.write(measurement.pageNumber + "," + measurement + LINE_BREAK);
+		for (Measurement total : getTotals())
+			writer.write("total," + total + LINE_BREAK);
+		writer.flush();
+	}
+
+	public static class Measurement {
+		private int pageNumber;
+		private Stage stage;
+		private long wallTime;
+		private long cpuTime;
+		private long allocatedBytes;
+		private int elementCount;
+
+		public Measurement(int pageNumber, Stage stage, long wallTime, long cpuTime, long allocatedBytes,
+				int elementCount) {
+			this.pageNumber = pageNumber;
+			this.stage = stage;
+			this.wallTime = wallTime;
+			this.cpuTime = cpuTime;
+			this.allocatedBytes = allocatedBytes;
+			this.elementCount = elementCount;
+		}
+
+		public int getPageNumber() {
+			return pageNumber;
+		}
+
+		public Stage getStage() {
+			return stage;
+		}
+
+		public long getWallTime() {
+			return wallTime;
+		}
+
+		public long getCpuTime() {
+			return cpuTime;
+		}
+
+		public long getAllocatedBytes() {
+			return allocatedBytes;
+		}
+
+		public int getElementCount() {
+			return elementCount;
+		}
+
+		@Override
+		public String toString() {
+			return stage + "," + wallTime + "," + cpuTime + "," + allocatedBytes + "," + elementCount;
+		}
+	}
+}
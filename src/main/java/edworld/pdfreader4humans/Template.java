@@ -0,0 +1,177 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static edworld.pdfreader4humans.PDFReader.LINE_BREAK;
+import static edworld.pdfreader4humans.PDFReader.UTF_8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Template parsed once into literal and <code>${field}</code> segments. The
+ * <code>${content}</code> placeholder splits it into parts, between which the
+ * content is written. Parts are compiled once per indent level, where every
+ * line except a lone <code>${content}</code> line is prefixed with tabs.
+ */
+public class Template {
+	private static final String CONTENT = "content";
+	private static final ConcurrentMap<String, Template> TEMPLATES = new ConcurrentHashMap<String, Template>();
+	private String text;
+	private ConcurrentMap<Integer, Part[]> indentedParts = new ConcurrentHashMap<Integer, Part[]>();
+
+	public Template(String text) {
+		this.text = text;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * @return the template read from the resource /templates/templateFileName,
+	 *         shared by all readers
+	 */
+	public static Template get(String templateFileName) {
+		Template template = TEMPLATES.get(templateFileName);
+		if (template != null)
+			return template;
+		InputStream input = Template.class.getResourceAsStream("/templates/" + templateFileName);
+		if (input == null)
+			throw new IllegalArgumentException("Template not found: " + templateFileName);
+		try {
+			try {
+				template = new Template(IOUtils.toString(input, UTF_8));
+			} finally {
+				input.close();
+			}
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+		Template previous = TEMPLATES.putIfAbsent(templateFileName, template);
+		return previous == null ? template : previous;
+	}
+
+	/**
+	 * @return the parts of the template indented by the given number of tabs;
+	 *         the content goes between consecutive parts
+	 */
+	public Part[] getParts(int indentLevel) {
+		Part[] parts = indentedParts.get(indentLevel);
+		if (parts == null) {
+			parts = compile(indent(text, indentLevel));
+			indentedParts.putIfAbsent(indentLevel, parts);
+		}
+		return parts;
+	}
+
+	/**
+	 * @return the text with its fields replaced, ${content} included when the
+	 *         fields do not provide it
+	 */
+	public static String fill(String text, Fields fields) {
+		StringBuilder output = new StringBuilder();
+		try {
+			new Part(parse(text)).write(output, fields);
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+		return output.toString();
+	}
+
+	/**
+	 * @return the text with every line except a lone ${content} line
+	 *         prefixed with the given number of tabs
+	 */
+	public static String indent(String text, int indentLevel) {
+		try {
+			char[] tabs = new char[indentLevel];
+			Arrays.fill(tabs, '\t');
+			StringBuilder buffer = new StringBuilder();
+			for (String line : IOUtils.readLines(new StringReader(text)))
+				if (line.equals("${" + CONTENT + "}"))
+					buffer.append(line);
+				else
+					buffer.append(tabs).append(line).append(LINE_BREAK);
+			return buffer.toString();
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	private static Part[] compile(String text) {
+		List<Part> parts = new ArrayList<Part>();
+		List<String> segments = new ArrayList<String>();
+		for (String segment : parse(text))
+			if (segment.equals("${" + CONTENT + "}")) {
+				parts.add(new Part(segments));
+				segments = new ArrayList<String>();
+			} else
+				segments.add(segment);
+		parts.add(new Part(segments));
+		return parts.toArray(new Part[parts.size()]);
+	}
+
+	/**
+	 * @return literal segments alternating with placeholder segments, which
+	 *         keep their <code>${}</code> delimiters
+	 */
+	private static List<String> parse(String text) {
+		List<String> segments = new ArrayList<String>();
+		int start = 0;
+		for (int index = text.indexOf("${"); index >= 0; index = text.indexOf("${", index + 1)) {
+			int end = index + 2;
+			while (end < text.length() && Character.isJavaIdentifierPart(text.charAt(end)))
+				end++;
+			if (end == index + 2 || end == text.length() || text.charAt(end) != '}')
+				continue;
+			segments.add(text.substring(start, index));
+			segments.add(text.substring(index, end + 1));
+			start = end + 1;
+			index = end;
+		}
+		segments.add(text.substring(start));
+		return segments;
+	}
+
+	/**
+	 * Provider of the values of the fields of a template.
+	 */
+	public interface Fields {
+		/**
+		 * @return false when there is no such field, leaving its placeholder
+		 *         in the output
+		 */
+		boolean appendField(String fieldName, Appendable output) throws IOException;
+	}
+
+	public static class Part {
+		private String[] literals;
+		private String[] fieldNames;
+
+		private Part(List<String> segments) {
+			literals = new String[(segments.size() + 1) / 2];
+			fieldNames = new String[segments.size() / 2];
+			for (int i = 0; i < segments.size(); i++)
+				if (i % 2 == 0)
+					literals[i / 2] = segments.get(i);
+				else
+					fieldNames[i / 2] = segments.get(i).substring(2, segments.get(i).length() - 1);
+		}
+
+		public void write(Appendable output, Fields fields) throws IOException {
+			for (int i = 0; i < literals.length; i++) {
+				output.append(literals[i]);
+				if (i < fieldNames.length && (fields == null || !fields.appendField(fieldNames[i], output)))
+					output.append("${").append(fieldNames[i]).append('}');
+			}
+		}
+	}
+}
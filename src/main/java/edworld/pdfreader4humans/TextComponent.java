@@ -1,6 +1,8 @@
 // This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
 package edworld.pdfreader4humans;
 
+import java.io.IOException;
+
 public class TextComponent extends Component {
 	protected static float UNDERLINE_TOLERANCE = 0.5f;
 	protected static final float MAX_CONSECUTIVE_DISTANCE = 2.3f;
@@ -31,6 +33,20 @@ public class TextComponent extends Component {
 		return distanceInCharacters(other, ignoreFontStyle) <= MAX_CONSECUTIVE_DISTANCE;
 	}
 
+	/**
+	 * Same as consecutive, for a text that is not a component yet, with the
+	 * given bounds, number of characters and font.
+	 */
+	public static boolean consecutive(float fromX, float fromY, float toX, float toY, int length, String fontName,
+			float fontSize, TextComponent other, boolean ignoreFontStyle) {
+		boolean fontStyleRule = ignoreFontStyle
+				|| (fontName.equals(other.getFontName()) && fontSize == other.getFontSize());
+		if (!(fontStyleRule && fromY <= other.getToY() && toY >= other.getFromY() && fromX < other.getFromX()))
+			return false;
+		return Math.max(0, (other.getFromX() - toX)
+				/ Math.max((toX - fromX) / length, other.getAverageCharacterWidth())) <= MAX_CONSECUTIVE_DISTANCE;
+	}
+
 	public float distanceInCharacters(TextComponent other, boolean ignoreFontStyle) {
 		if (followedBy(other, ignoreFontStyle))
 			return Math.max(0, (other.getFromX() - getToX())
@@ -49,12 +65,20 @@ public class TextComponent extends Component {
 	}
 
 	@Override
-	public String output(String template) {
-		String output = super.output(template);
-		output = fillTemplate(output, "text", getText());
-		output = fillTemplate(output, "fontName", getFontName());
-		output = fillTemplate(output, "fontSize", getFontSize());
-		return output;
+	public boolean appendField(String fieldName, Appendable output) throws IOException {
+		switch (fieldName) {
+		case "text":
+			output.append(getText());
+			return true;
+		case "fontName":
+			output.append(getFontName());
+			return true;
+		case "fontSize":
+			output.append(String.valueOf(getFontSize()));
+			return true;
+		default:
+			return super.appendField(fieldName, output);
+		}
 	}
 
 	@Override
@@ -8,6 +8,8 @@ import edworld.pdfreader4humans.BoxComponent;
 import edworld.pdfreader4humans.BoxDetector;
 import edworld.pdfreader4humans.Component;
 import edworld.pdfreader4humans.GridComponent;
+import edworld.pdfreader4humans.util.NextComponentIndex;
+import edworld.pdfreader4humans.util.VerticalComponentIndex;
 
 public class MainBoxDetector implements BoxDetector {
 	@Override
@@ -17,33 +19,36 @@ public class MainBoxDetector implements BoxDetector {
 
 	private List<BoxComponent> detectBoxes(List<Component> horizontalComponents, List<Component> verticalComponents) {
 		List<BoxComponent> boxes = new ArrayList<BoxComponent>();
+		NextComponentIndex<Component> horizontalIndex = new NextComponentIndex<Component>(horizontalComponents);
+		VerticalComponentIndex<Component> verticalIndex = new VerticalComponentIndex<Component>(verticalComponents);
 		for (Component horizontalComponent : horizontalComponents)
-			detectBoxes(horizontalComponent, verticalComponents, horizontalComponents, boxes);
+			detectBoxes(horizontalComponent, verticalIndex, horizontalIndex, boxes);
 		Component.smartSort(boxes);
 		return boxes;
 	}
 
-	private void detectBoxes(Component horizontalComponent, List<Component> verticalComponents, List<Component> horizontalComponents, List<BoxComponent> boxes) {
+	private void detectBoxes(Component horizontalComponent, VerticalComponentIndex<Component> verticalIndex, NextComponentIndex<Component> horizontalIndex, List<BoxComponent> boxes) {
 		GridComponent previousVerticalAbove = null;
 		GridComponent previousVerticalBelow = null;
-		for (GridComponent verticalBound : verticalBounds(horizontalComponent, verticalComponents)) {
+		for (Component verticalComponent : verticalIndex.intersecting(horizontalComponent)) {
+			GridComponent verticalBound = (GridComponent) verticalComponent;
 			if (verticalBound.getFromY() < horizontalComponent.getFromY()) {
-				createBoxAbove(horizontalComponent, previousVerticalAbove, verticalBound, verticalComponents, horizontalComponents, boxes);
+				createBoxAbove(horizontalComponent, previousVerticalAbove, verticalBound, verticalIndex, horizontalIndex, boxes);
 				previousVerticalAbove = verticalBound;
 			}
 			if (verticalBound.getToY() > horizontalComponent.getToY()) {
-				createUnboundedBoxBelow(horizontalComponent, previousVerticalBelow, verticalBound, verticalComponents, horizontalComponents, boxes);
+				createUnboundedBoxBelow(horizontalComponent, previousVerticalBelow, verticalBound, verticalIndex, horizontalIndex, boxes);
 				previousVerticalBelow = verticalBound;
 			}
 		}
 		if (previousVerticalAbove != null && previousVerticalAbove.getToX() < horizontalComponent.getToX() - previousVerticalAbove.getWidth())
-			createBoxAbove(horizontalComponent, previousVerticalAbove, null, verticalComponents, horizontalComponents, boxes);
+			createBoxAbove(horizontalComponent, previousVerticalAbove, null, verticalIndex, horizontalIndex, boxes);
 		if (previousVerticalBelow != null && previousVerticalBelow.getToX() < horizontalComponent.getToX() - previousVerticalBelow.getWidth())
-			createUnboundedBoxBelow(horizontalComponent, previousVerticalBelow, null, verticalComponents, horizontalComponents, boxes);
+			createUnboundedBoxBelow(horizontalComponent, previousVerticalBelow, null, verticalIndex, horizontalIndex, boxes);
 	}
 
-	private void createBoxAbove(Component horizontalComponent, GridComponent verticalBound1, GridComponent verticalBound2, List<Component> verticalComponents,
-			List<Component> horizontalComponents, List<BoxComponent> boxes) {
+	private void createBoxAbove(Component horizontalComponent, GridComponent verticalBound1, GridComponent verticalBound2, VerticalComponentIndex<Component> verticalIndex,
+			NextComponentIndex<Component> horizontalIndex, List<BoxComponent> boxes) {
 		boolean borderLeft = (verticalBound1 != null);
 		boolean borderRight = (verticalBound2 != null);
 		if (!borderLeft)
@@ -54,10 +59,10 @@ public class MainBoxDetector implements BoxDetector {
 					horizontalComponent.getToX(), horizontalComponent.getFromY(), verticalBound1.getLineWidth());
 		if (verticalBound1.getToX() >= verticalBound2.getFromX())
 			return;
-		Component upperBound = horizontalComponent.nextUpperHorizontalComponent(verticalBound1.getToX(), verticalBound2.getFromX(), horizontalComponents);
+		Component upperBound = horizontalIndex.nextUpperHorizontalComponent(horizontalComponent, verticalBound1.getToX(), verticalBound2.getFromX());
 		float minTop = (upperBound == null ? Float.NEGATIVE_INFINITY : upperBound.getFromY());
-		float fromY1 = Math.max(transitiveTop(verticalBound1, verticalComponents), minTop);
-		float fromY2 = Math.max(transitiveTop(verticalBound2, verticalComponents), minTop);
+		float fromY1 = Math.max(verticalIndex.transitiveTop(verticalBound1), minTop);
+		float fromY2 = Math.max(verticalIndex.transitiveTop(verticalBound2), minTop);
 		if (Math.abs(fromY1 - fromY2) < horizontalComponent.getHeight()) {
 			float fromY = Math.max(fromY1, fromY2);
 			boolean borderTop = (upperBound != null && upperBound.getToY() >= fromY);
@@ -66,25 +71,8 @@ public class MainBoxDetector implements BoxDetector {
 		}
 	}
 
-	private float transitiveTop(Component component, List<Component> verticalComponents) {
-		float top = component.getFromY();
-		Component next = nextUpperExtension(component, verticalComponents);
-		while (next != null) {
-			top = next.getFromY();
-			next = nextUpperExtension(next, verticalComponents);
-		}
-		return top;
-	}
-
-	private Component nextUpperExtension(Component verticalComponent, List<Component> verticalComponents) {
-		for (Component candidate : verticalComponents)
-			if (verticalComponent.verticalExtension(candidate) && candidate.getFromY() < verticalComponent.getFromY())
-				return candidate;
-		return null;
-	}
-
-	private void createUnboundedBoxBelow(Component horizontalComponent, GridComponent verticalBound1, GridComponent verticalBound2, List<Component> verticalComponents,
-			List<Component> horizontalComponents, List<BoxComponent> boxes) {
+	private void createUnboundedBoxBelow(Component horizontalComponent, GridComponent verticalBound1, GridComponent verticalBound2, VerticalComponentIndex<Component> verticalIndex,
+			NextComponentIndex<Component> horizontalIndex, List<BoxComponent> boxes) {
 		boolean borderLeft = (verticalBound1 != null);
 		boolean borderRight = (verticalBound2 != null);
 		if (!borderLeft)
@@ -95,10 +83,10 @@ public class MainBoxDetector implements BoxDetector {
 					horizontalComponent.getToX(), verticalBound1.getToY(), verticalBound1.getLineWidth());
 		if (verticalBound1.getToX() >= verticalBound2.getFromX())
 			return;
-		Component lowerBound = horizontalComponent.nextLowerHorizontalComponent(verticalBound1.getToX(), verticalBound2.getFromX(), horizontalComponents);
+		Component lowerBound = horizontalIndex.nextLowerHorizontalComponent(horizontalComponent, verticalBound1.getToX(), verticalBound2.getFromX());
 		float maxBottom = (lowerBound == null ? Float.POSITIVE_INFINITY : lowerBound.getToY());
-		float toY1 = Math.min(transitiveBottom(verticalBound1, verticalComponents), maxBottom);
-		float toY2 = Math.min(transitiveBottom(verticalBound2, verticalComponents), maxBottom);
+		float toY1 = Math.min(verticalIndex.transitiveBottom(verticalBound1), maxBottom);
+		float toY2 = Math.min(verticalIndex.transitiveBottom(verticalBound2), maxBottom);
 		float toY = Math.min(toY1, toY2);
 		boolean borderBottom = (lowerBound != null && lowerBound.getFromY() <= toY);
 		if (!borderBottom && Math.abs(toY1 - toY2) < horizontalComponent.getHeight()) {
@@ -106,29 +94,4 @@ public class MainBoxDetector implements BoxDetector {
 					.getLineWidth(), borderLeft, true, borderRight, borderBottom));
 		}
 	}
-
-	private float transitiveBottom(Component component, List<Component> verticalComponents) {
-		float bottom = component.getToY();
-		Component next = nextLowerExtension(component, verticalComponents);
-		while (next != null) {
-			bottom = next.getToY();
-			next = nextLowerExtension(next, verticalComponents);
-		}
-		return bottom;
-	}
-
-	private Component nextLowerExtension(Component verticalComponent, List<Component> verticalComponents) {
-		for (Component candidate : verticalComponents)
-			if (verticalComponent.verticalExtension(candidate) && candidate.getFromY() > verticalComponent.getFromY())
-				return candidate;
-		return null;
-	}
-
-	private List<GridComponent> verticalBounds(Component horizontalComponent, List<Component> verticalComponents) {
-		List<GridComponent> verticalBounds = new ArrayList<GridComponent>();
-		for (Component verticalComponent : verticalComponents)
-			if (horizontalComponent.intersects(verticalComponent))
-				verticalBounds.add((GridComponent) verticalComponent);
-		return verticalBounds;
-	}
 }
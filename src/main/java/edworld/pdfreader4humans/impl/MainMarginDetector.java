@@ -4,73 +4,181 @@ package edworld.pdfreader4humans.impl;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import edworld.pdfreader4humans.Component;
 import edworld.pdfreader4humans.MarginComponent;
 import edworld.pdfreader4humans.MarginDetector;
 import edworld.pdfreader4humans.TextComponent;
+import edworld.pdfreader4humans.util.DisjointSets;
+import edworld.pdfreader4humans.util.NextComponentIndex;
+import edworld.pdfreader4humans.util.OverlapSearch;
 
+/**
+ * Each text component, in reading order, extends the earliest changed margin
+ * whose next lower component (skipping its underline) is that text, or starts
+ * a new margin. Then intersecting margins are joined, first the earliest
+ * margin with its earliest intersecting margin, until none intersect. Margins
+ * with the area of one of their texts are discarded.
+ */
 public class MainMarginDetector implements MarginDetector {
 	@Override
 	public List<MarginComponent> detectMargins(List<? extends Component> components) {
 		List<Component> sortedComponents = new ArrayList<Component>(components);
 		Collections.sort(sortedComponents);
+		NextComponentIndex<Component> lowerIndex = new NextComponentIndex<Component>(sortedComponents);
 		List<MarginComponent> margins = new ArrayList<MarginComponent>();
-		Map<Component, MarginComponent> map = new HashMap<Component, MarginComponent>();
+		List<Integer> lastChanges = new ArrayList<Integer>();
+		List<Integer> changedMargins = new ArrayList<Integer>();
+		Map<Component, List<Integer>> waitingChanges = new HashMap<Component, List<Integer>>();
+		Map<Component, Integer> map = new HashMap<Component, Integer>();
 		for (Component component : sortedComponents)
-			if (map.get(component) == null && component instanceof TextComponent)
-				map.put(component,
-						provideMarginForComponent((TextComponent) component, sortedComponents, margins, map));
-		joinConnectedMargins(margins, map);
-		for (Component component : map.keySet())
-			if (map.get(component).getArea() == component.getArea())
-				margins.remove(map.get(component));
-		Collections.sort(margins);
-		return margins;
+			if (map.get(component) == null && component instanceof TextComponent) {
+				Integer marginIndex = waitingMargin(component, waitingChanges, changedMargins, lastChanges);
+				if (marginIndex == null) {
+					marginIndex = margins.size();
+					margins.add(new MarginComponent(component.getFromX(), component.getFromY(), component.getToX(),
+							component.getToY()));
+					lastChanges.add(null);
+				} else
+					margins.set(marginIndex, margins.get(marginIndex).extended(component));
+				lastChanges.set(marginIndex, changedMargins.size());
+				changedMargins.add(marginIndex);
+				Component nextLowerComponent = nextLowerComponent(margins.get(marginIndex), lowerIndex);
+				if (nextLowerComponent != null) {
+					if (!waitingChanges.containsKey(nextLowerComponent))
+						waitingChanges.put(nextLowerComponent, new ArrayList<Integer>());
+					waitingChanges.get(nextLowerComponent).add(lastChanges.get(marginIndex));
+				}
+				map.put(component, marginIndex);
+			}
+		DisjointSets connectedMargins = connectedMargins(margins);
+		Map<Integer, MarginComponent> joinedMargins = joinConnectedMargins(margins, lastChanges, connectedMargins);
+		List<MarginComponent> result = new ArrayList<MarginComponent>(joinedMargins.values());
+		for (Component component : map.keySet()) {
+			MarginComponent margin = joinedMargins.get(connectedMargins.find(map.get(component)));
+			if (margin.getArea() == component.getArea())
+				result.remove(margin);
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	private Integer waitingMargin(Component component, Map<Component, List<Integer>> waitingChanges,
+			List<Integer> changedMargins, List<Integer> lastChanges) {
+		List<Integer> changes = waitingChanges.remove(component);
+		if (changes != null)
+			for (Integer change : changes)
+				if (lastChanges.get(changedMargins.get(change)).equals(change))
+					return changedMargins.get(change);
+		return null;
+	}
+
+	private Component nextLowerComponent(MarginComponent margin, NextComponentIndex<Component> lowerIndex) {
+		Component nextLowerComponent = lowerIndex.nextLowerHorizontalComponent(margin, margin.getToX(),
+				margin.getFromX());
+		if (nextLowerComponent != null && nextLowerComponent.underlineOf(margin))
+			nextLowerComponent = lowerIndex.nextLowerHorizontalComponent(nextLowerComponent, margin.getToX(),
+					margin.getFromX());
+		return nextLowerComponent;
 	}
 
-	private MarginComponent provideMarginForComponent(TextComponent component, List<Component> components,
-			List<MarginComponent> margins, Map<Component, MarginComponent> map) {
-		for (MarginComponent margin : margins) {
-			Component nextLowerComponent = margin.nextLowerHorizontalComponent(margin.getToX(), margin.getFromX(),
-					components);
-			if (nextLowerComponent != null && nextLowerComponent.underlineOf(margin))
-				nextLowerComponent = nextLowerComponent.nextLowerHorizontalComponent(margin.getToX(), margin.getFromX(),
-						components);
-			if (component == nextLowerComponent) {
-				MarginComponent extendedMargin = margin.extended(component);
-				margins.remove(margin);
-				margins.add(extendedMargin);
-				updateMap(map, margin, extendedMargin);
-				return extendedMargin;
+	/**
+	 * Groups the margins that end up joined, repeatedly joining the groups
+	 * whose bounds intersect.
+	 */
+	private DisjointSets connectedMargins(List<MarginComponent> margins) {
+		final DisjointSets connectedMargins = new DisjointSets(margins.size());
+		List<Integer> groups = new ArrayList<Integer>();
+		List<MarginComponent> bounds = new ArrayList<MarginComponent>(margins);
+		for (int i = 0; i < margins.size(); i++)
+			groups.add(i);
+		while (true) {
+			final List<Integer> currentGroups = groups;
+			OverlapSearch.INTERSECTION.forEachOverlappingPair(bounds, new OverlapSearch.PairHandler() {
+				@Override
+				public void pair(int index1, int index2) {
+					connectedMargins.union(currentGroups.get(index1), currentGroups.get(index2));
+				}
+			});
+			Map<Integer, MarginComponent> joinedBounds = new TreeMap<Integer, MarginComponent>();
+			for (int i = 0; i < groups.size(); i++) {
+				int group = connectedMargins.find(groups.get(i));
+				MarginComponent joined = joinedBounds.get(group);
+				joinedBounds.put(group, joined == null ? bounds.get(i) : joined.extended(bounds.get(i)));
 			}
+			if (joinedBounds.size() == groups.size())
+				return connectedMargins;
+			groups = new ArrayList<Integer>(joinedBounds.keySet());
+			bounds = new ArrayList<MarginComponent>(joinedBounds.values());
 		}
-		MarginComponent margin = new MarginComponent(component.getFromX(), component.getFromY(), component.getToX(),
-				component.getToY());
-		margins.add(margin);
-		return margin;
 	}
 
-	private void joinConnectedMargins(List<MarginComponent> margins, Map<Component, MarginComponent> map) {
-		for (MarginComponent marginA : margins)
-			for (MarginComponent marginB : margins)
-				if (marginA.intersects(marginB)) {
-					MarginComponent extendedMargin = marginA.extended(marginB);
-					margins.remove(marginA);
-					margins.remove(marginB);
-					margins.add(extendedMargin);
-					updateMap(map, marginA, extendedMargin);
-					updateMap(map, marginB, extendedMargin);
-					joinConnectedMargins(margins, map);
-					return;
-				}
+	/**
+	 * Joins the margins in the order of the pairwise scan that restarts after
+	 * each join, looking for intersections only inside each group of connected
+	 * margins. Margins before the scan position intersect nothing, so after a
+	 * join only the joined margin can make them intersect.
+	 * 
+	 * @return the joined margin of each group, in list order
+	 */
+	private Map<Integer, MarginComponent> joinConnectedMargins(List<MarginComponent> margins,
+			List<Integer> lastChanges, DisjointSets connectedMargins) {
+		TreeMap<Integer, MarginComponent> list = new TreeMap<Integer, MarginComponent>();
+		Map<Integer, Integer> groupOfPosition = new HashMap<Integer, Integer>();
+		Map<Integer, TreeSet<Integer>> groupPositions = new HashMap<Integer, TreeSet<Integer>>();
+		for (int i = 0; i < margins.size(); i++) {
+			int group = connectedMargins.find(i);
+			list.put(lastChanges.get(i), margins.get(i));
+			groupOfPosition.put(lastChanges.get(i), group);
+			if (!groupPositions.containsKey(group))
+				groupPositions.put(group, new TreeSet<Integer>());
+			groupPositions.get(group).add(lastChanges.get(i));
+		}
+		int nextPosition = list.isEmpty() ? 0 : list.lastKey() + 1;
+		Integer position = list.isEmpty() ? null : list.firstKey();
+		while (position != null) {
+			NavigableSet<Integer> positions = groupPositions.get(groupOfPosition.get(position));
+			Integer partner = firstIntersecting(list, position, positions);
+			if (partner == null) {
+				position = list.higherKey(position);
+				continue;
+			}
+			int joined = join(list, groupOfPosition, positions, position, partner, nextPosition++);
+			Integer earlier;
+			while ((earlier = firstIntersecting(list, joined, positions.headSet(position, false))) != null) {
+				joined = join(list, groupOfPosition, positions, earlier, joined, nextPosition++);
+				position = earlier;
+			}
+			position = list.higherKey(position);
+		}
+		Map<Integer, MarginComponent> joinedMargins = new LinkedHashMap<Integer, MarginComponent>();
+		for (Integer joinedPosition : list.keySet())
+			joinedMargins.put(groupOfPosition.get(joinedPosition), list.get(joinedPosition));
+		return joinedMargins;
+	}
+
+	private Integer firstIntersecting(Map<Integer, MarginComponent> list, int position,
+			NavigableSet<Integer> positions) {
+		MarginComponent margin = list.get(position);
+		for (Integer otherPosition : positions)
+			if (otherPosition != position && margin.intersects(list.get(otherPosition)))
+				return otherPosition;
+		return null;
 	}
 
-	private void updateMap(Map<Component, MarginComponent> map, MarginComponent fromMargin, MarginComponent toMargin) {
-		for (Component component : map.keySet())
-			if (map.get(component) == fromMargin)
-				map.put(component, toMargin);
+	private int join(Map<Integer, MarginComponent> list, Map<Integer, Integer> groupOfPosition,
+			NavigableSet<Integer> positions, int positionA, int positionB, int joinedPosition) {
+		list.put(joinedPosition, list.remove(positionA).extended(list.remove(positionB)));
+		positions.remove(positionA);
+		positions.remove(positionB);
+		positions.add(joinedPosition);
+		groupOfPosition.put(joinedPosition, groupOfPosition.get(positionA));
+		return joinedPosition;
 	}
 }
@@ -13,50 +13,183 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
+import org.apache.pdfbox.contentstream.PDFGraphicsStreamEngine;
 import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.state.SetLineWidth;
 import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.font.PDType3CharProc;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
 import org.apache.pdfbox.rendering.PDFRenderer;
 import org.apache.pdfbox.rendering.PageDrawer;
 import org.apache.pdfbox.rendering.PageDrawerParameters;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.apache.pdfbox.text.TextPosition;
+import org.apache.pdfbox.util.Matrix;
 
 import edworld.pdfreader4humans.Component;
 import edworld.pdfreader4humans.GridComponent;
-import edworld.pdfreader4humans.PDFComponentLocator;
+import edworld.pdfreader4humans.ManagedPDFComponentLocator;
 import edworld.pdfreader4humans.PDFPage;
 import edworld.pdfreader4humans.TextComponent;
+import edworld.pdfreader4humans.util.PageCache;
+import edworld.pdfreader4humans.util.VerticalComponentIndex;
 
-public class MainPDFComponentLocator implements PDFComponentLocator {
+public class MainPDFComponentLocator implements ManagedPDFComponentLocator {
 	private static final String SPACE = " ";
-	private Map<PDFPage, List<GridComponent>> cachedGridComponents = new HashMap<PDFPage, List<GridComponent>>();
-	private Map<PDFPage, List<TextComponent>> cachedTextComponents = new HashMap<PDFPage, List<TextComponent>>();
+	public static final long DEFAULT_MAX_CACHED_COMPONENTS = 100000;
+	private Mode mode;
+	private PageCache<LocatedComponents> cache;
+	private Map<PDFPage, FutureTask<LocatedComponents>> pendingPages = new HashMap<PDFPage, FutureTask<LocatedComponents>>();
+
+	/**
+	 * How the content stream of a page is parsed to locate its components.
+	 */
+	public enum Mode {
+		/**
+		 * Grid components are intercepted while the page is rendered to an
+		 * image, then a text stripper parses the page again.
+		 */
+		RENDERING,
+		/**
+		 * Grid components are located by a plain content-stream engine that
+		 * only tracks the current point, transformation matrix and line width,
+		 * without any raster work, then a text stripper parses the page again.
+		 */
+		CONTENT_STREAM,
+		/**
+		 * Grid components and text positions are collected by the text
+		 * stripper in a single parse of the page.
+		 */
+		SINGLE_PASS
+	}
+
+	public MainPDFComponentLocator() {
+		this(Mode.RENDERING);
+	}
+
+	public MainPDFComponentLocator(Mode mode) {
+		this(mode, DEFAULT_MAX_CACHED_COMPONENTS);
+	}
+
+	/**
+	 * @param maxCachedComponents
+	 *            maximum number of grid and text components kept for pages
+	 *            already parsed; the least recently used pages are evicted
+	 *            first, and parsed again if they are requested afterwards
+	 */
+	public MainPDFComponentLocator(Mode mode, long maxCachedComponents) {
+		this.mode = mode;
+		this.cache = new PageCache<LocatedComponents>(maxCachedComponents) {
+			@Override
+			protected long weight(LocatedComponents value) {
+				return value.gridComponents.size() + value.textComponents.size();
+			}
+		};
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public String getConfiguration() {
+		return mode.toString();
+	}
 
 	public List<GridComponent> locateGridComponents(PDFPage page) throws IOException {
-		List<GridComponent> gridComponents = cachedGridComponents.get(page);
-		if (gridComponents != null)
-			return gridComponents;
-		locateComponents(page);
-		return cachedGridComponents.get(page);
+		return locatedComponents(page).gridComponents;
 	}
 
 	public List<TextComponent> locateTextComponents(PDFPage page) throws IOException {
-		List<TextComponent> textComponents = cachedTextComponents.get(page);
-		if (textComponents != null)
-			return textComponents;
-		locateComponents(page);
-		return cachedTextComponents.get(page);
+		return locatedComponents(page).textComponents;
+	}
+
+	/**
+	 * Forgets the components located in the pages of a document, which should
+	 * be called when the document is closed.
+	 */
+	public void release(PDDocument doc) {
+		cache.release(doc);
 	}
 
-	private void locateComponents(PDFPage page) throws IOException {
-		List<GridComponent> gridComponents = locateAllGridComponents(page);
-		List<TextComponent> textComponents = locateAllTextComponents(page, gridComponents);
-		cachedGridComponents.put(page, gridComponents);
+	public PageCache<?> getCache() {
+		return cache;
+	}
+
+	/**
+	 * @return the components of the page, located only once when several
+	 *         threads ask for the same page at the same time
+	 */
+	private LocatedComponents locatedComponents(final PDFPage page) throws IOException {
+		FutureTask<LocatedComponents> location;
+		boolean locating = false;
+		synchronized (pendingPages) {
+			LocatedComponents components = cache.get(page);
+			if (components != null)
+				return components;
+			location = pendingPages.get(page);
+			if (location == null) {
+				location = new FutureTask<LocatedComponents>(new Callable<LocatedComponents>() {
+					public LocatedComponents call() throws IOException {
+						return locateComponents(page);
+					}
+				});
+				pendingPages.put(page, location);
+				locating = true;
+			}
+		}
+		if (!locating)
+			return result(location);
+		try {
+			location.run();
+			LocatedComponents components = result(location);
+			synchronized (pendingPages) {
+				cache.put(page, components);
+			}
+			return components;
+		} finally {
+			synchronized (pendingPages) {
+				pendingPages.remove(page);
+			}
+		}
+	}
+
+	private LocatedComponents result(FutureTask<LocatedComponents> location) throws IOException {
+		try {
+			return location.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private LocatedComponents locateComponents(PDFPage page) throws IOException {
+		List<GridComponent> gridComponents;
+		List<TextComponent> textComponents;
+		if (mode == Mode.SINGLE_PASS) {
+			gridComponents = new ArrayList<GridComponent>();
+			textComponents = locateAllComponents(page, gridComponents);
+		} else {
+			gridComponents = mode == Mode.RENDERING ? locateAllGridComponents(page)
+					: locateAllGridComponentsWithoutRendering(page);
+			textComponents = locateAllTextComponents(page, gridComponents);
+		}
 		Collections.sort(textComponents);
-		cachedTextComponents.put(page, textComponents);
+		return new LocatedComponents(gridComponents, textComponents);
 	}
 
 	protected List<GridComponent> locateAllGridComponents(PDFPage page) throws IOException {
@@ -99,19 +232,8 @@ public class MainPDFComponentLocator implements PDFComponentLocator {
 					}
 
 					private void addGridComponent(String type, Point2D from, Point2D to) {
-						float fromX = (float) min(from.getX(), to.getX());
-						float fromY = (float) min(adjustY(from.getY()), adjustY(to.getY()));
-						float toX = (float) max(from.getX(), to.getX());
-						float toY = (float) max(adjustY(from.getY()), adjustY(to.getY()));
-						list.add(new GridComponent(type, fromX, fromY, toX, toY, getGraphicsState().getLineWidth()));
-					}
-
-					private double adjustY(double y) {
-						return getPage().getBBox().getHeight() - y;
-					}
-
-					private boolean isTextOperation(String operation) {
-						return "/BT/ET/T*/Tc/Td/TD/Tf/Tj/TJ/TL/Tm/Tr/Ts/Tw/Tz/'/\"/".contains("/" + operation + "/");
+						list.add(gridComponent(type, from, to, getPage().getBBox().getHeight(),
+								getGraphicsState().getLineWidth()));
 					}
 				};
 			}
@@ -120,29 +242,186 @@ public class MainPDFComponentLocator implements PDFComponentLocator {
 		return list;
 	}
 
-	protected List<TextComponent> locateAllTextComponents(PDFPage page, final List<GridComponent> gridComponents)
+	protected List<GridComponent> locateAllGridComponentsWithoutRendering(PDFPage page) throws IOException {
+		final List<GridComponent> list = new ArrayList<GridComponent>();
+		final PDPage thePage = page.getPage();
+		new PDFGraphicsStreamEngine(thePage) {
+			private Point2D currentPoint;
+			private Point2D subpathStart;
+
+			public void locateGridComponents() throws IOException {
+				processPage(thePage);
+				for (PDAnnotation annotation : thePage.getAnnotations())
+					if (!annotation.isNoView() && !annotation.isHidden())
+						showAnnotation(annotation);
+			}
+
+			@Override
+			protected void processOperator(Operator operator, List<COSBase> arguments) throws IOException {
+				String operation = operator.getName();
+				if (isTextOperation(operation))
+					return;
+				if (operation.equals("i")) {
+					getGraphicsState().setFlatness(((COSNumber) arguments.get(0)).doubleValue());
+					return;
+				}
+				if (operation.equals("l"))
+					processLineTo((COSNumber) arguments.get(0), (COSNumber) arguments.get(1));
+				else if (operation.equals("re"))
+					processAppendRectangleToPath((COSNumber) arguments.get(0), (COSNumber) arguments.get(1),
+							(COSNumber) arguments.get(2), (COSNumber) arguments.get(3));
+				super.processOperator(operator, arguments);
+			}
+
+			private void processLineTo(COSNumber x, COSNumber y) {
+				Point2D from = currentPoint;
+				Point2D to = transformedPoint(x.floatValue(), y.floatValue());
+				if (from != null && (to.getX() == from.getX() || to.getY() == from.getY()))
+					addGridComponent("line", from, to);
+			}
+
+			private void processAppendRectangleToPath(COSNumber x, COSNumber y, COSNumber w, COSNumber h) {
+				Point2D from = transformedPoint(x.floatValue(), y.floatValue());
+				Point2D to = transformedPoint(w.floatValue() + x.floatValue(), h.floatValue() + y.floatValue());
+				addGridComponent("rect", from, to);
+			}
+
+			private void addGridComponent(String type, Point2D from, Point2D to) {
+				list.add(gridComponent(type, from, to, getPage().getBBox().getHeight(),
+						getGraphicsState().getLineWidth()));
+			}
+
+			@Override
+			public void appendRectangle(Point2D p0, Point2D p1, Point2D p2, Point2D p3) {
+				moveTo((float) p0.getX(), (float) p0.getY());
+			}
+
+			@Override
+			public void moveTo(float x, float y) {
+				currentPoint = new Point2D.Float(x, y);
+				subpathStart = currentPoint;
+			}
+
+			@Override
+			public void lineTo(float x, float y) {
+				currentPoint = new Point2D.Float(x, y);
+			}
+
+			@Override
+			public void curveTo(float x1, float y1, float x2, float y2, float x3, float y3) {
+				currentPoint = new Point2D.Float(x3, y3);
+			}
+
+			@Override
+			public Point2D getCurrentPoint() {
+				return currentPoint;
+			}
+
+			@Override
+			public void closePath() {
+				if (currentPoint != null)
+					currentPoint = subpathStart;
+			}
+
+			@Override
+			public void endPath() {
+				currentPoint = null;
+			}
+
+			@Override
+			public void strokePath() {
+				currentPoint = null;
+			}
+
+			@Override
+			public void fillPath(int windingRule) {
+				currentPoint = null;
+			}
+
+			@Override
+			public void fillAndStrokePath(int windingRule) {
+				currentPoint = null;
+			}
+
+			@Override
+			public void clip(int windingRule) {
+			}
+
+			@Override
+			public void drawImage(PDImage pdImage) {
+			}
+
+			@Override
+			public void shadingFill(COSName shadingName) {
+			}
+		}.locateGridComponents();
+		return list;
+	}
+
+	private GridComponent gridComponent(String type, Point2D from, Point2D to, float pageHeight, float lineWidth) {
+		float fromX = (float) min(from.getX(), to.getX());
+		float fromY = (float) min(pageHeight - from.getY(), pageHeight - to.getY());
+		float toX = (float) max(from.getX(), to.getX());
+		float toY = (float) max(pageHeight - from.getY(), pageHeight - to.getY());
+		return new GridComponent(type, fromX, fromY, toX, toY, lineWidth);
+	}
+
+	private boolean isPathPaintingOperation(String operation) {
+		return "/S/s/f/F/f*/B/B*/b/b*/n/".contains("/" + operation + "/");
+	}
+
+	private boolean isTextOperation(String operation) {
+		return "/BT/ET/T*/Tc/Td/TD/Tf/Tj/TJ/TL/Tm/Tr/Ts/Tw/Tz/'/\"/".contains("/" + operation + "/");
+	}
+
+	protected List<TextComponent> locateAllTextComponents(PDFPage page, List<GridComponent> gridComponents)
 			throws IOException {
+		return locateAllTextComponents(page, gridComponents, false);
+	}
+
+	/**
+	 * Locates text components and, in the same parse of the content stream,
+	 * the grid components of the page.
+	 * 
+	 * @param gridComponents
+	 *            empty list that receives the grid components of the page
+	 */
+	protected List<TextComponent> locateAllComponents(PDFPage page, List<GridComponent> gridComponents)
+			throws IOException {
+		return locateAllTextComponents(page, gridComponents, true);
+	}
+
+	private List<TextComponent> locateAllTextComponents(PDFPage page, final List<GridComponent> gridComponents,
+			final boolean locatingGridComponents) throws IOException {
 		final PDPage thePage = page.getPage();
 		return new PDFTextStripper() {
 			private Map<String, String> fusions;
 			List<Component> horizontalComponents;
 			List<Component> verticalComponents;
 			private ArrayList<TextComponent> list;
+			private StringBuilder partialText = new StringBuilder();
+			private Point2D currentPoint;
+			private Point2D subpathStart;
+			private boolean processingAnnotations;
+			private int type3GlyphDepth;
 
 			{
 				fusions = new HashMap<String, String>();
 				fusions.put("o-", "º");
 				fusions.put("a-", "ª");
+				addOperator(new SetLineWidth());
 			}
 
 			public List<TextComponent> locateTextComponents() throws IOException {
-				horizontalComponents = Component.horizontal(gridComponents);
-				verticalComponents = Component.vertical(gridComponents);
+				if (!locatingGridComponents) {
+					horizontalComponents = Component.horizontal(gridComponents);
+					verticalComponents = Component.vertical(gridComponents);
+				}
 				list = new ArrayList<TextComponent>();
 				setStartPage(getCurrentPageNo());
 				setEndPage(getCurrentPageNo());
 				setSortByPosition(false);
-				if (thePage.hasContents()) {
+				if (thePage.hasContents() || locatingGridComponents) {
 					output = new StringWriter();
 					processPage(thePage);
 				}
@@ -150,48 +429,189 @@ public class MainPDFComponentLocator implements PDFComponentLocator {
 				return list;
 			}
 
-			protected void joinConsecutiveTexts(ArrayList<TextComponent> textComponents) {
-				for (int i = 0; i < textComponents.size() - 1; i++) {
-					TextComponent currentComponent = textComponents.get(i);
-					TextComponent nextComponent = textComponents.get(i + 1);
-					if (currentComponent.consecutive(nextComponent, false)) {
-						boolean mustSeparate = false;
-						TextComponent newComponent = joinTextComponents(currentComponent, SPACE, nextComponent);
-						for (Component separator : verticalComponents)
-							if (separator.intersects(newComponent) && !separator.contains(newComponent)) {
-								mustSeparate = true;
-								break;
-							}
-						if (!mustSeparate) {
-							textComponents.set(i, newComponent);
-							textComponents.remove(i + 1);
-							i--;
-						}
-					}
+			@Override
+			protected void writePage() throws IOException {
+				if (locatingGridComponents) {
+					processingAnnotations = true;
+					for (PDAnnotation annotation : thePage.getAnnotations())
+						if (!annotation.isNoView() && !annotation.isHidden())
+							showAnnotation(annotation);
+					processingAnnotations = false;
+					horizontalComponents = Component.horizontal(gridComponents);
+					verticalComponents = Component.vertical(gridComponents);
 				}
+				super.writePage();
 			}
 
-			protected TextComponent joinTextComponents(TextComponent component1, String separatorCharacter,
-					TextComponent component2) {
-				return new TextComponent(component1.getText() + separatorCharacter + component2.getText(),
-						component1.getFromX(), min(component1.getFromY(), component2.getFromY()), component2.getToX(),
-						max(component1.getToY(), component2.getToY()), component1.getFontName(),
-						component1.getFontSize());
+			@Override
+			protected void processType3Stream(PDType3CharProc charProc, Matrix textRenderingMatrix)
+					throws IOException {
+				type3GlyphDepth++;
+				try {
+					super.processType3Stream(charProc, textRenderingMatrix);
+				} finally {
+					type3GlyphDepth--;
+				}
+			}
+
+			@Override
+			protected void processOperator(Operator operator, List<COSBase> arguments) throws IOException {
+				String operation = operator.getName();
+				if (processingAnnotations && isTextOperation(operation))
+					return;
+				if (locatingGridComponents && type3GlyphDepth == 0 && processPathOperation(operation, arguments))
+					return;
+				super.processOperator(operator, arguments);
+			}
+
+			private boolean processPathOperation(String operation, List<COSBase> arguments) {
+				if (operation.equals("i")) {
+					if (numbers(arguments, 1))
+						getGraphicsState().setFlatness(((COSNumber) arguments.get(0)).doubleValue());
+				} else if (operation.equals("m")) {
+					if (numbers(arguments, 2))
+						moveTo(point(arguments, 0));
+				} else if (operation.equals("l")) {
+					if (numbers(arguments, 2))
+						lineTo(point(arguments, 0));
+				} else if (operation.equals("re")) {
+					if (numbers(arguments, 4))
+						appendRectangle((COSNumber) arguments.get(0), (COSNumber) arguments.get(1),
+								(COSNumber) arguments.get(2), (COSNumber) arguments.get(3));
+				} else if (operation.equals("c")) {
+					if (numbers(arguments, 6))
+						curveTo(point(arguments, 4));
+				} else if (operation.equals("v") || operation.equals("y")) {
+					if (numbers(arguments, 4))
+						curveTo(point(arguments, 2));
+				} else if (operation.equals("h")) {
+					if (currentPoint != null)
+						currentPoint = subpathStart;
+				} else if (isPathPaintingOperation(operation))
+					currentPoint = null;
+				else
+					return false;
+				return true;
+			}
+
+			private void moveTo(Point2D point) {
+				currentPoint = point;
+				subpathStart = point;
+			}
+
+			private void lineTo(Point2D to) {
+				if (currentPoint == null)
+					moveTo(to);
+				else {
+					if (to.getX() == currentPoint.getX() || to.getY() == currentPoint.getY())
+						addGridComponent("line", currentPoint, to);
+					currentPoint = to;
+				}
+			}
+
+			private void curveTo(Point2D to) {
+				if (currentPoint == null)
+					moveTo(to);
+				else
+					currentPoint = to;
+			}
+
+			private void appendRectangle(COSNumber x, COSNumber y, COSNumber w, COSNumber h) {
+				Point2D from = transformedPoint(x.floatValue(), y.floatValue());
+				Point2D to = transformedPoint(w.floatValue() + x.floatValue(), h.floatValue() + y.floatValue());
+				addGridComponent("rect", from, to);
+				moveTo(from);
+			}
+
+			private void addGridComponent(String type, Point2D from, Point2D to) {
+				gridComponents.add(gridComponent(type, from, to, thePage.getBBox().getHeight(),
+						getGraphicsState().getLineWidth()));
+			}
+
+			private Point2D point(List<COSBase> arguments, int index) {
+				return transformedPoint(((COSNumber) arguments.get(index)).floatValue(),
+						((COSNumber) arguments.get(index + 1)).floatValue());
+			}
+
+			private boolean numbers(List<COSBase> arguments, int count) {
+				if (arguments.size() < count)
+					return false;
+				for (int i = 0; i < count; i++)
+					if (!(arguments.get(i) instanceof COSNumber))
+						return false;
+				return true;
+			}
+
+			/**
+			 * Joins each run of consecutive texts that no vertical separator
+			 * crosses, compacting the list in place. The text of a run is
+			 * accumulated in one builder and a component is only created for
+			 * runs of more than one text.
+			 */
+			protected void joinConsecutiveTexts(ArrayList<TextComponent> textComponents) {
+				if (textComponents.size() < 2)
+					return;
+				VerticalComponentIndex<Component> separators = new VerticalComponentIndex<Component>(
+						verticalComponents);
+				StringBuilder text = new StringBuilder();
+				int size = 0;
+				for (int i = 0; i < textComponents.size();) {
+					TextComponent first = textComponents.get(i++);
+					float fromX = first.getFromX();
+					float fromY = first.getFromY();
+					float toX = first.getToX();
+					float toY = first.getToY();
+					text.setLength(0);
+					text.append(first.getText());
+					int runStart = i;
+					for (; i < textComponents.size(); i++) {
+						TextComponent next = textComponents.get(i);
+						if (!TextComponent.consecutive(fromX, fromY, toX, toY, text.length(), first.getFontName(),
+								first.getFontSize(), next, false))
+							break;
+						float joinedFromY = min(fromY, next.getFromY());
+						float joinedToY = max(toY, next.getToY());
+						if (separators.crosses(fromX, joinedFromY, next.getToX(), joinedToY))
+							break;
+						text.append(SPACE).append(next.getText());
+						fromY = joinedFromY;
+						toX = next.getToX();
+						toY = joinedToY;
+					}
+					textComponents.set(size++, i == runStart ? first : new TextComponent(text.toString(), fromX,
+							fromY, toX, toY, first.getFontName(), first.getFontSize()));
+				}
+				textComponents.subList(size, textComponents.size()).clear();
 			}
 
 			@Override
 			protected void writeString(String text, List<TextPosition> textPositions) throws IOException {
+				int segmentStart = 0;
+				do
+					segmentStart = writeSegment(textPositions, segmentStart);
+				while (segmentStart < textPositions.size());
+			}
+
+			/**
+			 * Adds the text component of the glyphs from segmentStart until X
+			 * goes backwards or the glyphs end.
+			 * 
+			 * @return where the next segment starts: after the glyphs that
+			 *         were appended, not counting the ones fused into them
+			 */
+			private int writeSegment(List<TextPosition> textPositions, int segmentStart) {
 				float fromX = Float.POSITIVE_INFINITY;
 				float fromY = Float.POSITIVE_INFINITY;
 				float toX = Float.NEGATIVE_INFINITY;
 				float toY = Float.NEGATIVE_INFINITY;
 				float fontSize = -1;
 				String fontName = "";
-				List<TextPosition> partialList = new ArrayList<TextPosition>();
-				String partialText = "";
+				int appendedCount = 0;
+				partialText.setLength(0);
 				float lastLeft = Float.NEGATIVE_INFINITY;
 				float lastRight = Float.NEGATIVE_INFINITY;
-				for (TextPosition textPosition : textPositions) {
+				for (int i = segmentStart; i < textPositions.size(); i++) {
+					TextPosition textPosition = textPositions.get(i);
 					String character = textPosition.getUnicode();
 					Component overlappingShape = findOverlappingHorizontalShape(textPosition);
 					if (overlappingShape != null && (character.endsWith(SPACE) || fusible(character, "-"))) {
@@ -201,14 +621,12 @@ public class MainPDFComponentLocator implements PDFComponentLocator {
 					float x1 = textPosition.getX();
 					float y1 = textPosition.getY();
 					if (x1 < lastLeft) {
-						list.add(new TextComponent(partialText, fromX, fromY, toX, toY, fontName, fontSize));
-						writeString(text.substring(partialText.length()),
-								textPositions.subList(partialList.size(), textPositions.size()));
-						return;
+						list.add(new TextComponent(partialText.toString(), fromX, fromY, toX, toY, fontName, fontSize));
+						return segmentStart + appendedCount;
 					} else if (x1 < lastRight && fusible(partialText, character) && fontsz(textPosition) < fontSize)
-						partialText = fusion(partialText, character);
-					else if (x1 + textPosition.getWidth() * 0.2 < lastRight && partialText.endsWith(SPACE))
-						partialText = fusion(partialText, character);
+						fuse(partialText, character);
+					else if (x1 + textPosition.getWidth() * 0.2 < lastRight && endsWithSpace(partialText))
+						fuse(partialText, character);
 					else {
 						if (x1 < fromX) {
 							fromX = x1;
@@ -216,15 +634,16 @@ public class MainPDFComponentLocator implements PDFComponentLocator {
 							fontName = textPosition.getFont().getName();
 							fontSize = fontsz(textPosition);
 						}
-						partialList.add(textPosition);
-						partialText += character;
+						appendedCount++;
+						partialText.append(character);
 					}
 					toX = max(x1 + textPosition.getWidth(), toX);
 					toY = max(y1, toY);
 					lastLeft = x1;
 					lastRight = x1 + textPosition.getWidth();
 				}
-				list.add(new TextComponent(partialText, fromX, fromY, toX, toY, fontName, fontSize));
+				list.add(new TextComponent(partialText.toString(), fromX, fromY, toX, toY, fontName, fontSize));
+				return textPositions.size();
 			}
 
 			private float fontsz(TextPosition textPosition) {
@@ -242,26 +661,47 @@ public class MainPDFComponentLocator implements PDFComponentLocator {
 				return null;
 			}
 
-			private void removeOverlappingShape(Component overlappingShape) throws IOException {
+			private void removeOverlappingShape(Component overlappingShape) {
 				gridComponents.remove(overlappingShape);
 			}
 
-			private boolean fusible(String partialText, String character) {
+			private boolean fusible(CharSequence partialText, String character) {
 				return fusions.containsKey(fusionPair(partialText, character));
 			}
 
 			private String fusion(String partialText, String character) {
+				StringBuilder fused = new StringBuilder(partialText);
+				fuse(fused, character);
+				return fused.toString();
+			}
+
+			private void fuse(StringBuilder partialText, String character) {
 				if (character.equals(SPACE))
-					return partialText;
-				if (partialText.endsWith(SPACE))
-					return partialText.substring(0, partialText.length() - 1) + character;
-				return partialText.substring(0, partialText.length() - 1)
-						+ fusions.get(fusionPair(partialText, character));
+					return;
+				String fusedCharacter = endsWithSpace(partialText) ? character
+						: fusions.get(fusionPair(partialText, character));
+				partialText.setLength(partialText.length() - 1);
+				partialText.append(fusedCharacter);
+			}
+
+			private boolean endsWithSpace(CharSequence partialText) {
+				return partialText.length() > 0 && partialText.charAt(partialText.length() - 1) == SPACE.charAt(0);
 			}
 
-			private String fusionPair(String partialText, String character) {
-				return partialText.substring(partialText.length() - 1) + character.charAt(0);
+			private String fusionPair(CharSequence partialText, String character) {
+				return partialText.subSequence(partialText.length() - 1, partialText.length()).toString()
+						+ character.charAt(0);
 			}
 		}.locateTextComponents();
 	}
+
+	private static class LocatedComponents {
+		private List<GridComponent> gridComponents;
+		private List<TextComponent> textComponents;
+
+		private LocatedComponents(List<GridComponent> gridComponents, List<TextComponent> textComponents) {
+			this.gridComponents = gridComponents;
+			this.textComponents = textComponents;
+		}
+	}
 }
@@ -0,0 +1,290 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+import edworld.pdfreader4humans.BoxComponent;
+import edworld.pdfreader4humans.Component;
+import edworld.pdfreader4humans.GridComponent;
+import edworld.pdfreader4humans.GroupComponent;
+import edworld.pdfreader4humans.MarginComponent;
+import edworld.pdfreader4humans.TextComponent;
+
+/**
+ * Components of a page stored as parallel arrays of coordinates, type codes
+ * and parent links, so that geometric loops read primitives instead of
+ * calling methods on scattered objects. Parent links are only turned into
+ * children of the components when they are attached.
+ */
+public class ComponentArrays {
+	public static final int OTHER = 0;
+	public static final int TEXT = 1;
+	public static final int GRID = 2;
+	public static final int BOX = 3;
+	public static final int GROUP = 4;
+	public static final int MARGIN = 5;
+	public static final int NO_PARENT = -1;
+	private Component[] components;
+	private float[] fromX;
+	private float[] fromY;
+	private float[] toX;
+	private float[] toY;
+	private int[] types;
+	private int[] parents;
+	private int size;
+
+	public ComponentArrays(int capacity) {
+		capacity = Math.max(capacity, 1);
+		components = new Component[capacity];
+		fromX = new float[capacity];
+		fromY = new float[capacity];
+		toX = new float[capacity];
+		toY = new float[capacity];
+		types = new int[capacity];
+		parents = new int[capacity];
+	}
+
+	/**
+	 * @return the index of the added component
+	 */
+	public int add(Component component) {
+		if (size == components.length)
+			grow();
+		components[size] = component;
+		fromX[size] = component.getFromX();
+		fromY[size] = component.getFromY();
+		toX[size] = component.getToX();
+		toY[size] = component.getToY();
+		types[size] = typeOf(component);
+		parents[size] = NO_PARENT;
+		return size++;
+	}
+
+	public void addAll(List<? extends Component> components) {
+		for (Component component : components)
+			add(component);
+	}
+
+	/**
+	 * Removes all components, keeping the arrays for the next page.
+	 */
+	private void grow() {
+		int capacity = components.length * 2;
+		components = Arrays.copyOf(components, capacity);
+		fromX = Arrays.copyOf(fromX, capacity);
+		fromY = Arrays.copyOf(fromY, capacity);
+		toX = Arrays.copyOf(toX, capacity);
+		toY = Arrays.copyOf(toY, capacity);
+		types = Arrays.copyOf(types, capacity);
+		parents = Arrays.copyOf(parents, capacity);
+	}
+
+	private static int typeOf(Component component) {
+		if (component instanceof TextComponent)
+			return TEXT;
+		if (component instanceof GridComponent)
+			return GRID;
+		if (component instanceof BoxComponent)
+			return BOX;
+		if (component instanceof GroupComponent)
+			return GROUP;
+		if (component instanceof MarginComponent)
+			return MARGIN;
+		return OTHER;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public Component get(int index) {
+		return components[index];
+	}
+
+	/**
+	 * @return view of the components from fromIndex (inclusive) to toIndex
+	 *         (exclusive), valid until more components are added
+	 */
+	public List<Component> subList(int fromIndex, int toIndex) {
+		return Arrays.asList(components).subList(fromIndex, toIndex);
+	}
+
+	public float getFromX(int index) {
+		return fromX[index];
+	}
+
+	public float getFromY(int index) {
+		return fromY[index];
+	}
+
+	public float getToX(int index) {
+		return toX[index];
+	}
+
+	public float getToY(int index) {
+		return toY[index];
+	}
+
+	public int getType(int index) {
+		return types[index];
+	}
+
+	public float getArea(int index) {
+		return (toX[index] - fromX[index]) * (toY[index] - fromY[index]);
+	}
+
+	public int getParent(int index) {
+		return parents[index];
+	}
+
+	public void setParent(int index, int parent) {
+		parents[index] = parent;
+	}
+
+	/**
+	 * Same as Component.contains, apart from the identity check, for a
+	 * container stored in these arrays and the given coordinates.
+	 */
+	public boolean contains(int container, float otherFromX, float otherFromY, float otherToX, float otherToY,
+			boolean text, float tolerance) {
+		if (!(fromX[container] <= otherFromX + tolerance && toX[container] + tolerance >= otherToX
+				&& toY[container] + tolerance >= otherToY))
+			return false;
+		return text ? fromY[container] < otherToY + tolerance : fromY[container] <= otherFromY + tolerance;
+	}
+
+	/**
+	 * @return the components from fromIndex (inclusive) to toIndex (exclusive)
+	 *         as intervals that overlap when Component.intersects holds,
+	 *         indexed from 0
+	 */
+	public OverlapSearch.Intervals intersections(final int fromIndex, final int toIndex) {
+		return new OverlapSearch.Intervals() {
+			public int size() {
+				return toIndex - fromIndex;
+			}
+
+			public float start(int index) {
+				return fromX[fromIndex + index];
+			}
+
+			public float end(int index) {
+				return toX[fromIndex + index];
+			}
+
+			public float crossStart(int index) {
+				return fromY[fromIndex + index];
+			}
+
+			public float crossEnd(int index) {
+				return toY[fromIndex + index];
+			}
+
+			public boolean overlap(int index1, int index2) {
+				int i = fromIndex + index1;
+				int j = fromIndex + index2;
+				return components[i] != components[j] && fromX[i] <= toX[j] && toX[i] >= fromX[j]
+						&& fromY[i] <= toY[j] && toY[i] >= fromY[j];
+			}
+		};
+	}
+
+	/**
+	 * Turns the parent links of the components from fromIndex (inclusive) to
+	 * toIndex (exclusive) into children, in index order. Components without a
+	 * parent are added to the roots.
+	 */
+	public void attach(int fromIndex, int toIndex, List<Component> roots) {
+		for (int i = fromIndex; i < toIndex; i++)
+			if (parents[i] == NO_PARENT)
+				roots.add(components[i]);
+			else
+				components[parents[i]].addChild(components[i]);
+	}
+
+	/**
+	 * Turns the parent links of the components in the given ranges of indexes
+	 * into children, replacing the children attached before, and sorts the
+	 * roots and each list of children as Component.smartSort does, reading
+	 * only the arrays. The ranges are visited in the given order, which is the
+	 * order of the siblings before sorting.
+	 *
+	 * @param ranges
+	 *            pairs of fromIndex (inclusive) and toIndex (exclusive)
+	 */
+	public void attachInReadingOrder(List<Component> roots, int... ranges) {
+		int rootIndex = size;
+		int[] firstChildren = new int[size + 1];
+		int[] lastChildren = new int[size + 1];
+		int[] nextSiblings = new int[size];
+		Arrays.fill(firstChildren, -1);
+		for (int range = 0; range < ranges.length; range += 2)
+			for (int i = ranges[range]; i < ranges[range + 1]; i++) {
+				int parent = parents[i] == NO_PARENT ? rootIndex : parents[i];
+				nextSiblings[i] = -1;
+				if (firstChildren[parent] < 0)
+					firstChildren[parent] = i;
+				else
+					nextSiblings[lastChildren[parent]] = i;
+				lastChildren[parent] = i;
+			}
+		ReadingOrder readingOrder = readingOrder();
+		int[] siblings = new int[size];
+		for (int parent = 0; parent <= rootIndex; parent++) {
+			if (firstChildren[parent] < 0)
+				continue;
+			int count = 0;
+			for (int child = firstChildren[parent]; child >= 0; child = nextSiblings[child])
+				siblings[count++] = child;
+			readingOrder.sort(siblings, count);
+			List<Component> children = parent == rootIndex ? roots : components[parent].getChildren();
+			children.clear();
+			for (int i = 0; i < count; i++)
+				children.add(components[siblings[i]]);
+		}
+	}
+
+	private ReadingOrder readingOrder() {
+		return new ReadingOrder() {
+			@Override
+			protected int compare(int id1, int id2) {
+				if (verticallyBefore(id1, id2))
+					return -1;
+				if (verticallyBefore(id2, id1))
+					return 1;
+				if (fromX[id1] < fromX[id2])
+					return -1;
+				if (fromX[id1] > fromX[id2])
+					return 1;
+				if (fromY[id1] < fromY[id2])
+					return -1;
+				if (fromY[id1] > fromY[id2])
+					return 1;
+				return 0;
+			}
+
+			@Override
+			protected float bandStart(int id) {
+				return fromY[id] + (toY[id] - fromY[id]) / 20;
+			}
+
+			@Override
+			protected float bandEnd(int id) {
+				return toY[id] - (toY[id] - fromY[id]) / 20;
+			}
+
+			@Override
+			protected boolean sameBand(int id1, int id2) {
+				return !verticallyBefore(id1, id2) && !verticallyBefore(id2, id1);
+			}
+		};
+	}
+
+	/**
+	 * Same as Component.verticallyBefore.
+	 */
+	private boolean verticallyBefore(int index1, int index2) {
+		return toY[index1] - (toY[index1] - fromY[index1]) / 20 < fromY[index2] + (toY[index2] - fromY[index2]) / 20;
+	}
+}
@@ -0,0 +1,187 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import edworld.pdfreader4humans.Component;
+import edworld.pdfreader4humans.TextComponent;
+
+/**
+ * R-tree over a fixed list of containers, or a range of component arrays,
+ * packed with the Sort-Tile-Recursive algorithm, that finds the smallest
+ * container of a component in logarithmic time. It answers exactly as a
+ * linear scan that keeps the first container with the smallest area among
+ * those that contain the component within the given tolerance.
+ */
+public class ContainerIndex<T extends Component> {
+	private static final int NODE_CAPACITY = 8;
+	private ComponentArrays arrays;
+	private int fromIndex;
+	private int toIndex;
+	private float tolerance;
+	private Node root;
+
+	public ContainerIndex(List<? extends T> containers, float tolerance) {
+		this(arrays(containers), 0, containers.size(), tolerance);
+	}
+
+	/**
+	 * Index over the containers stored in the given arrays from fromIndex
+	 * (inclusive) to toIndex (exclusive).
+	 */
+	public ContainerIndex(ComponentArrays arrays, int fromIndex, int toIndex, float tolerance) {
+		this.arrays = arrays;
+		this.fromIndex = fromIndex;
+		this.toIndex = toIndex;
+		this.tolerance = tolerance;
+		List<Node> nodes = new ArrayList<Node>(toIndex - fromIndex);
+		for (int i = fromIndex; i < toIndex; i++)
+			if (!Float.isNaN(arrays.getFromX(i)) && !Float.isNaN(arrays.getFromY(i)) && !Float.isNaN(arrays.getToX(i))
+					&& !Float.isNaN(arrays.getToY(i)))
+				nodes.add(new Node(i, arrays));
+		while (nodes.size() > 1)
+			nodes = pack(nodes);
+		root = nodes.isEmpty() ? null : nodes.get(0);
+	}
+
+	private static ComponentArrays arrays(List<? extends Component> containers) {
+		ComponentArrays arrays = new ComponentArrays(containers.size());
+		arrays.addAll(containers);
+		return arrays;
+	}
+
+	@SuppressWarnings("unchecked")
+	public T findContainer(Component component) {
+		int container = findContainer(component, component.getFromX(), component.getFromY(), component.getToX(),
+				component.getToY(), component instanceof TextComponent);
+		return container < 0 ? null : (T) arrays.get(container);
+	}
+
+	/**
+	 * @return the index of the smallest container of the component stored
+	 *         at the given index of the arrays, or -1 if there is none
+	 */
+	public int findContainer(int index) {
+		return findContainer(arrays.get(index), arrays.getFromX(index), arrays.getFromY(index), arrays.getToX(index),
+				arrays.getToY(index), arrays.getType(index) == ComponentArrays.TEXT);
+	}
+
+	private int findContainer(Component component, float fromX, float fromY, float toX, float toY, boolean text) {
+		Query query = new Query(component, fromX, fromY, toX, toY, text);
+		if (!(fromX <= toX && fromY <= toY))
+			findContainerLinearly(query);
+		else if (root != null)
+			search(root, query);
+		return query.best;
+	}
+
+	private void search(Node node, Query query) {
+		float x = query.fromX;
+		float y = query.toY;
+		if (node.fromX > x + tolerance || node.toX + tolerance < x || node.fromY > y + tolerance
+				|| node.toY + tolerance < y)
+			return;
+		if (node.children == null) {
+			if (contains(node.index, query)) {
+				float area = arrays.getArea(node.index);
+				if (area < query.bestArea || (query.best >= 0 && area == query.bestArea && node.index < query.best)) {
+					query.best = node.index;
+					query.bestArea = area;
+				}
+			}
+		} else
+			for (Node child : node.children)
+				search(child, query);
+	}
+
+	private void findContainerLinearly(Query query) {
+		for (int i = fromIndex; i < toIndex; i++)
+			if (contains(i, query) && arrays.getArea(i) < query.bestArea) {
+				query.best = i;
+				query.bestArea = arrays.getArea(i);
+			}
+	}
+
+	private boolean contains(int container, Query query) {
+		return arrays.get(container) != query.component && arrays.contains(container, query.fromX, query.fromY,
+				query.toX, query.toY, query.text, tolerance);
+	}
+
+	private List<Node> pack(List<Node> nodes) {
+		int parentCount = (nodes.size() + NODE_CAPACITY - 1) / NODE_CAPACITY;
+		int sliceCount = (int) Math.ceil(Math.sqrt(parentCount));
+		int sliceSize = sliceCount * NODE_CAPACITY;
+		Collections.sort(nodes, BY_CENTER_X);
+		List<Node> parents = new ArrayList<Node>(parentCount);
+		for (int sliceStart = 0; sliceStart < nodes.size(); sliceStart += sliceSize) {
+			List<Node> slice = new ArrayList<Node>(nodes.subList(sliceStart, Math.min(sliceStart + sliceSize,
+					nodes.size())));
+			Collections.sort(slice, BY_CENTER_Y);
+			for (int start = 0; start < slice.size(); start += NODE_CAPACITY)
+				parents.add(new Node(slice.subList(start, Math.min(start + NODE_CAPACITY, slice.size()))));
+		}
+		return parents;
+	}
+
+	private static final Comparator<Node> BY_CENTER_X = new Comparator<Node>() {
+		@Override
+		public int compare(Node node1, Node node2) {
+			return Double.compare((double) node1.fromX + node1.toX, (double) node2.fromX + node2.toX);
+		}
+	};
+
+	private static final Comparator<Node> BY_CENTER_Y = new Comparator<Node>() {
+		@Override
+		public int compare(Node node1, Node node2) {
+			return Double.compare((double) node1.fromY + node1.toY, (double) node2.fromY + node2.toY);
+		}
+	};
+
+	private static class Node {
+		private float fromX, fromY, toX, toY;
+		private int index;
+		private Node[] children;
+
+		private Node(int index, ComponentArrays arrays) {
+			this.index = index;
+			fromX = arrays.getFromX(index);
+			fromY = arrays.getFromY(index);
+			toX = arrays.getToX(index);
+			toY = arrays.getToY(index);
+		}
+
+		private Node(List<Node> children) {
+			this.children = children.toArray(new Node[children.size()]);
+			fromX = Float.POSITIVE_INFINITY;
+			fromY = Float.POSITIVE_INFINITY;
+			toX = Float.NEGATIVE_INFINITY;
+			toY = Float.NEGATIVE_INFINITY;
+			for (Node child : children) {
+				fromX = Math.min(fromX, child.fromX);
+				fromY = Math.min(fromY, child.fromY);
+				toX = Math.max(toX, child.toX);
+				toY = Math.max(toY, child.toY);
+			}
+		}
+	}
+
+	private static class Query {
+		private Component component;
+		private float fromX, fromY, toX, toY;
+		private boolean text;
+		private int best = -1;
+		private float bestArea = Float.POSITIVE_INFINITY;
+
+		private Query(Component component, float fromX, float fromY, float toX, float toY, boolean text) {
+			this.component = component;
+			this.fromX = fromX;
+			this.fromY = fromY;
+			this.toX = toX;
+			this.toY = toY;
+			this.text = text;
+		}
+	}
+}
@@ -0,0 +1,44 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+/**
+ * Union-find structure over the indexes 0 to size - 1, with union by rank and
+ * path halving.
+ */
+public class DisjointSets {
+	private int[] parent;
+	private byte[] rank;
+
+	public DisjointSets(int size) {
+		parent = new int[size];
+		rank = new byte[size];
+		for (int i = 0; i < size; i++)
+			parent[i] = i;
+	}
+
+	public int find(int element) {
+		while (parent[element] != element) {
+			parent[element] = parent[parent[element]];
+			element = parent[element];
+		}
+		return element;
+	}
+
+	/**
+	 * @return the representative of the joined set
+	 */
+	public int union(int element1, int element2) {
+		int root1 = find(element1);
+		int root2 = find(element2);
+		if (root1 == root2)
+			return root1;
+		if (rank[root1] < rank[root2]) {
+			parent[root1] = root2;
+			return root2;
+		}
+		if (rank[root1] == rank[root2])
+			rank[root1]++;
+		parent[root2] = root1;
+		return root1;
+	}
+}
@@ -0,0 +1,73 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer that replaces each pair of consecutive line breaks by a single one
+ * while the text is streamed, scanning from left to right exactly as
+ * <code>text.replaceAll(lineBreak + lineBreak, lineBreak)</code> would.
+ */
+public class EmptyLineRemovingWriter extends FilterWriter {
+	private String lineBreak;
+	private String emptyLine;
+	private StringBuilder pending = new StringBuilder();
+
+	public EmptyLineRemovingWriter(Writer out, String lineBreak) {
+		super(out);
+		this.lineBreak = lineBreak;
+		this.emptyLine = lineBreak + lineBreak;
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		pending.append((char) c);
+		while (pending.length() > 0)
+			if (!pendingStartsEmptyLine()) {
+				out.write(pending.charAt(0));
+				pending.deleteCharAt(0);
+			} else if (pending.length() == emptyLine.length()) {
+				out.write(lineBreak);
+				pending.setLength(0);
+			} else
+				return;
+	}
+
+	private boolean pendingStartsEmptyLine() {
+		for (int i = 0; i < pending.length(); i++)
+			if (pending.charAt(i) != emptyLine.charAt(i))
+				return false;
+		return true;
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		for (int i = off; i < off + len; i++)
+			write(cbuf[i]);
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		for (int i = off; i < off + len; i++)
+			write(str.charAt(i));
+	}
+
+	/**
+	 * Writes the characters held back while waiting for a possible empty line,
+	 * without closing the underlying writer. Nothing more should be written
+	 * afterwards.
+	 */
+	public void finish() throws IOException {
+		out.write(pending.toString());
+		pending.setLength(0);
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		finish();
+		super.close();
+	}
+}
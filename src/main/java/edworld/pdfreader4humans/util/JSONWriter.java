@@ -0,0 +1,192 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Streaming writer of JSON documents. Values are written straight to the
+ * underlying writer as they come, either indented by tabs, one member per
+ * line, or compact, without any whitespace.
+ */
+public class JSONWriter {
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	private static final long[] POWERS_OF_TEN = { 1, 10, 100, 1000, 10000 };
+	private Writer out;
+	private boolean compact;
+	private String lineBreak;
+	private int depth;
+	private boolean empty = true;
+	private boolean afterName;
+	private char[] digits = new char[24];
+
+	public JSONWriter(Writer out, boolean compact, String lineBreak) {
+		this.out = out;
+		this.compact = compact;
+		this.lineBreak = lineBreak;
+	}
+
+	public JSONWriter beginObject() throws IOException {
+		return begin('{');
+	}
+
+	public JSONWriter endObject() throws IOException {
+		return end('}');
+	}
+
+	public JSONWriter beginArray() throws IOException {
+		return begin('[');
+	}
+
+	public JSONWriter endArray() throws IOException {
+		return end(']');
+	}
+
+	private JSONWriter begin(char bracket) throws IOException {
+		beforeValue();
+		out.write(bracket);
+		depth++;
+		empty = true;
+		return this;
+	}
+
+	private JSONWriter end(char bracket) throws IOException {
+		depth--;
+		if (!empty)
+			newLine();
+		out.write(bracket);
+		empty = false;
+		return this;
+	}
+
+	public JSONWriter name(String name) throws IOException {
+		separate();
+		writeString(name);
+		out.write(compact ? ":" : ": ");
+		afterName = true;
+		return this;
+	}
+
+	public JSONWriter value(String value) throws IOException {
+		beforeValue();
+		if (value == null)
+			out.write("null");
+		else
+			writeString(value);
+		return this;
+	}
+
+	public JSONWriter value(long value) throws IOException {
+		beforeValue();
+		out.write(Long.toString(value));
+		return this;
+	}
+
+	/**
+	 * Writes the shortest decimal with up to four fraction digits that reads
+	 * back as the same float, which covers the usual PDF coordinates without
+	 * creating strings; other values are written as Float.toString does.
+	 * Values that JSON cannot represent are written as null.
+	 */
+	public JSONWriter value(float value) throws IOException {
+		beforeValue();
+		if (Float.isNaN(value) || Float.isInfinite(value)) {
+			out.write("null");
+			return this;
+		}
+		float absolute = Math.abs(value);
+		if (absolute < 1e7f)
+			for (int decimals = 0; decimals < POWERS_OF_TEN.length; decimals++) {
+				long scaled = Math.round((double) absolute * POWERS_OF_TEN[decimals]);
+				if ((float) ((double) scaled / POWERS_OF_TEN[decimals]) == absolute) {
+					writeDecimal(value < 0 || 1 / value < 0, scaled, decimals);
+					return this;
+				}
+			}
+		out.write(Float.toString(value));
+		return this;
+	}
+
+	private void writeDecimal(boolean negative, long scaled, int decimals) throws IOException {
+		int position = digits.length;
+		if (decimals == 0)
+			digits[--position] = '0';
+		for (int i = 0; i < decimals; i++) {
+			digits[--position] = (char) ('0' + scaled % 10);
+			scaled /= 10;
+		}
+		digits[--position] = '.';
+		do {
+			digits[--position] = (char) ('0' + scaled % 10);
+			scaled /= 10;
+		} while (scaled > 0);
+		if (negative)
+			digits[--position] = '-';
+		out.write(digits, position, digits.length - position);
+	}
+
+	private void writeString(String text) throws IOException {
+		out.write('"');
+		int start = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c >= ' ' && c != '"' && c != '\\')
+				continue;
+			out.write(text, start, i - start);
+			start = i + 1;
+			switch (c) {
+			case '"':
+				out.write("\\\"");
+				break;
+			case '\\':
+				out.write("\\\\");
+				break;
+			case '\n':
+				out.write("\\n");
+				break;
+			case '\r':
+				out.write("\\r");
+				break;
+			case '\t':
+				out.write("\\t");
+				break;
+			default:
+				out.write("\\u");
+				for (int shift = 12; shift >= 0; shift -= 4)
+					out.write(HEX_DIGITS[c >> shift & 0xF]);
+			}
+		}
+		out.write(text, start, text.length() - start);
+		out.write('"');
+	}
+
+	private void beforeValue() throws IOException {
+		if (afterName)
+			afterName = false;
+		else
+			separate();
+	}
+
+	private void separate() throws IOException {
+		if (!empty)
+			out.write(',');
+		empty = false;
+		if (depth > 0)
+			newLine();
+	}
+
+	private void newLine() throws IOException {
+		if (compact)
+			return;
+		out.write(lineBreak);
+		for (int i = 0; i < depth; i++)
+			out.write('\t');
+	}
+
+	/**
+	 * Flushes the underlying writer, which is not closed.
+	 */
+	public void flush() throws IOException {
+		out.flush();
+	}
+}
@@ -0,0 +1,63 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import java.io.File;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+
+/**
+ * How PDFUtil loads a document: whether a local file is read in place through
+ * a random access file instead of being copied to the heap, and how much heap
+ * the parsed streams may take before they are moved to temporary files.
+ */
+public class LoadOptions {
+	/**
+	 * Everything on the heap, as PDDocument.load(InputStream) does.
+	 */
+	public static final LoadOptions IN_MEMORY = new LoadOptions(false, -1, null);
+	private boolean randomAccessFile;
+	private long maxMainMemoryBytes;
+	private File tempDir;
+
+	/**
+	 * @param randomAccessFile
+	 *            whether a file: URL is read in place instead of through an
+	 *            InputStream
+	 * @param maxMainMemoryBytes
+	 *            heap budget for the document, beyond which temporary files are
+	 *            used; negative for no budget
+	 * @param tempDir
+	 *            directory of the temporary files, or null for the default one
+	 */
+	public LoadOptions(boolean randomAccessFile, long maxMainMemoryBytes, File tempDir) {
+		this.randomAccessFile = randomAccessFile;
+		this.maxMainMemoryBytes = maxMainMemoryBytes;
+		this.tempDir = tempDir;
+	}
+
+	/**
+	 * Local files read in place and at most the given heap, with temporary
+	 * files in the default directory.
+	 */
+	public static LoadOptions scratchFile(long maxMainMemoryBytes) {
+		return new LoadOptions(true, maxMainMemoryBytes, null);
+	}
+
+	public boolean isRandomAccessFile() {
+		return randomAccessFile;
+	}
+
+	public long getMaxMainMemoryBytes() {
+		return maxMainMemoryBytes;
+	}
+
+	public File getTempDir() {
+		return tempDir;
+	}
+
+	public MemoryUsageSetting memoryUsageSetting() {
+		MemoryUsageSetting setting = maxMainMemoryBytes < 0 ? MemoryUsageSetting.setupMainMemoryOnly()
+				: MemoryUsageSetting.setupMixed(maxMainMemoryBytes);
+		return tempDir == null ? setting : setting.setTempDir(tempDir);
+	}
+}
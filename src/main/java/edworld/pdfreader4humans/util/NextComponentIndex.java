@@ -0,0 +1,116 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import java.util.List;
+
+import edworld.pdfreader4humans.Component;
+
+/**
+ * Segment tree over a fixed list of components that answers
+ * Component.nextLowerHorizontalComponent and
+ * Component.nextUpperHorizontalComponent without scanning the list: each node
+ * keeps the bounds of its range, so only ranges that may hold a match are
+ * visited. On lists sorted from top to bottom this takes about logarithmic
+ * time.
+ */
+public class NextComponentIndex<T extends Component> {
+	private List<? extends T> components;
+	private int leafCount = 1;
+	private float[] maxFromY;
+	private float[] minFromX;
+	private float[] maxToX;
+	private float[] reachedToY;
+
+	public NextComponentIndex(List<? extends T> components) {
+		this.components = components;
+		while (leafCount < components.size())
+			leafCount *= 2;
+		maxFromY = new float[2 * leafCount];
+		minFromX = new float[2 * leafCount];
+		maxToX = new float[2 * leafCount];
+		for (int node = 0; node < 2 * leafCount; node++) {
+			maxFromY[node] = Float.NEGATIVE_INFINITY;
+			minFromX[node] = Float.POSITIVE_INFINITY;
+			maxToX[node] = Float.NEGATIVE_INFINITY;
+		}
+		for (int i = 0; i < components.size(); i++) {
+			maxFromY[leafCount + i] = components.get(i).getFromY();
+			minFromX[leafCount + i] = components.get(i).getFromX();
+			maxToX[leafCount + i] = components.get(i).getToX();
+		}
+		reachedToY = new float[components.size()];
+		float reached = Float.NaN;
+		for (int i = 0; i < components.size(); i++) {
+			float toY = components.get(i).getToY();
+			if (toY > reached || (Float.isNaN(reached) && !Float.isNaN(toY)))
+				reached = toY;
+			reachedToY[i] = reached;
+		}
+		for (int node = leafCount - 1; node > 0; node--) {
+			maxFromY[node] = Math.max(maxFromY[2 * node], maxFromY[2 * node + 1]);
+			minFromX[node] = Math.min(minFromX[2 * node], minFromX[2 * node + 1]);
+			maxToX[node] = Math.max(maxToX[2 * node], maxToX[2 * node + 1]);
+		}
+	}
+
+	/**
+	 * @return the same as
+	 *         <code>component.nextLowerHorizontalComponent(maxLeft, minRight, components)</code>
+	 */
+	public T nextLowerHorizontalComponent(Component component, float maxLeft, float minRight) {
+		int index = firstLower(1, component.getToY(), maxLeft, minRight);
+		return index < 0 ? null : components.get(index);
+	}
+
+	/**
+	 * @return the same as
+	 *         <code>component.nextUpperHorizontalComponent(maxLeft, minRight, components)</code>
+	 */
+	public T nextUpperHorizontalComponent(Component component, float maxLeft, float minRight) {
+		int end = firstReaching(component.getFromY());
+		int index = end == 0 ? -1 : lastBefore(1, 0, leafCount, end, maxLeft, minRight);
+		return index < 0 ? null : components.get(index);
+	}
+
+	/**
+	 * @return the index of the first component whose bottom is at or below y,
+	 *         where nextUpperHorizontalComponent stops looking
+	 */
+	private int firstReaching(float y) {
+		int low = 0, high = reachedToY.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (reachedToY[middle] >= y)
+				high = middle;
+			else
+				low = middle + 1;
+		}
+		return low;
+	}
+
+	private int lastBefore(int node, int nodeStart, int nodeEnd, int end, float maxLeft, float minRight) {
+		if (nodeStart >= end || minFromX[node] > maxLeft || maxToX[node] < minRight)
+			return -1;
+		if (node >= leafCount) {
+			T candidate = components.get(nodeStart);
+			return candidate.getFromX() <= maxLeft && candidate.getToX() >= minRight ? nodeStart : -1;
+		}
+		int middle = (nodeStart + nodeEnd) >>> 1;
+		int index = lastBefore(2 * node + 1, middle, nodeEnd, end, maxLeft, minRight);
+		return index >= 0 ? index : lastBefore(2 * node, nodeStart, middle, end, maxLeft, minRight);
+	}
+
+	private int firstLower(int node, float y, float maxLeft, float minRight) {
+		if (maxFromY[node] <= y || minFromX[node] > maxLeft || maxToX[node] < minRight)
+			return -1;
+		if (node >= leafCount) {
+			if (node - leafCount >= components.size())
+				return -1;
+			T candidate = components.get(node - leafCount);
+			return candidate.getFromY() > y && candidate.getFromX() <= maxLeft && candidate.getToX() >= minRight
+					? node - leafCount : -1;
+		}
+		int index = firstLower(2 * node, y, maxLeft, minRight);
+		return index >= 0 ? index : firstLower(2 * node + 1, y, maxLeft, minRight);
+	}
+}
@@ -0,0 +1,258 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import edworld.pdfreader4humans.Component;
+
+/**
+ * Finds every pair of overlapping items through a tree over their bounding
+ * intervals, packed with the Sort-Tile-Recursive algorithm, so each item is
+ * only checked against the items whose intervals overlap its own along both
+ * axes. The pairs are handed over one at a time, sorted by the first index and
+ * then by the second, as a nested loop over the list would find them. Items
+ * whose intervals are reversed or undefined are checked against every other
+ * item.
+ */
+public abstract class OverlapSearch<T> {
+	private static final int NODE_CAPACITY = 8;
+
+	/**
+	 * Pairs of components for which Component.intersects holds, searched over
+	 * their X and Y intervals.
+	 */
+	public static final OverlapSearch<Component> INTERSECTION = new OverlapSearch<Component>() {
+		@Override
+		protected float start(Component component) {
+			return component.getFromX();
+		}
+
+		@Override
+		protected float end(Component component) {
+			return component.getToX();
+		}
+
+		@Override
+		protected float crossStart(Component component) {
+			return component.getFromY();
+		}
+
+		@Override
+		protected float crossEnd(Component component) {
+			return component.getToY();
+		}
+
+		@Override
+		protected boolean overlap(Component component1, Component component2) {
+			return component1.intersects(component2);
+		}
+	};
+
+	/**
+	 * Start of the item's interval. Items whose intervals are disjoint must
+	 * not overlap.
+	 */
+	protected abstract float start(T item);
+
+	protected abstract float end(T item);
+
+	/**
+	 * Start of the item's interval along a second axis, unbounded unless
+	 * overridden. Items whose intervals are disjoint must not overlap.
+	 */
+	protected float crossStart(T item) {
+		return Float.NEGATIVE_INFINITY;
+	}
+
+	protected float crossEnd(T item) {
+		return Float.POSITIVE_INFINITY;
+	}
+
+	protected abstract boolean overlap(T item1, T item2);
+
+	/**
+	 * Hands every pair of overlapping items to the handler, as indexes i < j
+	 * in the given list, sorted by i and then by j.
+	 */
+	public void forEachOverlappingPair(final List<? extends T> items, PairHandler handler) {
+		forEachOverlappingPair(new Intervals() {
+			public int size() {
+				return items.size();
+			}
+
+			public float start(int index) {
+				return OverlapSearch.this.start(items.get(index));
+			}
+
+			public float end(int index) {
+				return OverlapSearch.this.end(items.get(index));
+			}
+
+			public float crossStart(int index) {
+				return OverlapSearch.this.crossStart(items.get(index));
+			}
+
+			public float crossEnd(int index) {
+				return OverlapSearch.this.crossEnd(items.get(index));
+			}
+
+			public boolean overlap(int index1, int index2) {
+				return OverlapSearch.this.overlap(items.get(index1), items.get(index2));
+			}
+		}, handler);
+	}
+
+	/**
+	 * Hands every pair of overlapping items to the handler, as indexes i < j,
+	 * sorted by i and then by j.
+	 */
+	public static void forEachOverlappingPair(Intervals items, PairHandler handler) {
+		int size = items.size();
+		Node[] leaves = new Node[size];
+		List<Node> nodes = new ArrayList<Node>(size);
+		int[] irregular = new int[size];
+		int irregularCount = 0;
+		for (int i = 0; i < size; i++) {
+			leaves[i] = new Node(i, items.start(i), items.end(i), items.crossStart(i), items.crossEnd(i));
+			if (leaves[i].start <= leaves[i].end && leaves[i].crossStart <= leaves[i].crossEnd)
+				nodes.add(leaves[i]);
+			else
+				irregular[irregularCount++] = i;
+		}
+		while (nodes.size() > 1)
+			nodes = pack(nodes);
+		Node root = nodes.isEmpty() ? null : nodes.get(0);
+		IntList candidates = new IntList();
+		for (int i = 0; i < size; i++) {
+			candidates.size = 0;
+			if (irregularCount > 0 && Arrays.binarySearch(irregular, 0, irregularCount, i) >= 0)
+				for (int j = i + 1; j < size; j++)
+					candidates.add(j);
+			else {
+				if (root != null)
+					search(root, leaves[i], candidates);
+				for (int k = 0; k < irregularCount; k++)
+					if (irregular[k] > i)
+						candidates.add(irregular[k]);
+				Arrays.sort(candidates.values, 0, candidates.size);
+			}
+			for (int k = 0; k < candidates.size; k++)
+				if (items.overlap(i, candidates.values[k]))
+					handler.pair(i, candidates.values[k]);
+		}
+	}
+
+	/**
+	 * Adds to the candidates the indexes after the query's index of the
+	 * leaves whose intervals overlap the query's ones.
+	 */
+	private static void search(Node node, Node query, IntList candidates) {
+		if (node.lastIndex <= query.index || node.start > query.end || node.end < query.start
+				|| node.crossStart > query.crossEnd || node.crossEnd < query.crossStart)
+			return;
+		if (node.children == null)
+			candidates.add(node.index);
+		else
+			for (Node child : node.children)
+				search(child, query, candidates);
+	}
+
+	private static List<Node> pack(List<Node> nodes) {
+		int parentCount = (nodes.size() + NODE_CAPACITY - 1) / NODE_CAPACITY;
+		int sliceCount = (int) Math.ceil(Math.sqrt(parentCount));
+		int sliceSize = sliceCount * NODE_CAPACITY;
+		Collections.sort(nodes, BY_START);
+		List<Node> parents = new ArrayList<Node>(parentCount);
+		for (int sliceStart = 0; sliceStart < nodes.size(); sliceStart += sliceSize) {
+			List<Node> slice = new ArrayList<Node>(nodes.subList(sliceStart, Math.min(sliceStart + sliceSize,
+					nodes.size())));
+			Collections.sort(slice, BY_CROSS_START);
+			for (int start = 0; start < slice.size(); start += NODE_CAPACITY)
+				parents.add(new Node(slice.subList(start, Math.min(start + NODE_CAPACITY, slice.size()))));
+		}
+		return parents;
+	}
+
+	private static final Comparator<Node> BY_START = new Comparator<Node>() {
+		@Override
+		public int compare(Node node1, Node node2) {
+			return Float.compare(node1.start, node2.start);
+		}
+	};
+
+	private static final Comparator<Node> BY_CROSS_START = new Comparator<Node>() {
+		@Override
+		public int compare(Node node1, Node node2) {
+			return Float.compare(node1.crossStart, node2.crossStart);
+		}
+	};
+
+	/**
+	 * Items known by their indexes, from 0 to size() - 1, with an interval
+	 * along each axis. Items whose intervals are disjoint must not overlap.
+	 */
+	public interface Intervals {
+		int size();
+
+		float start(int index);
+
+		float end(int index);
+
+		float crossStart(int index);
+
+		float crossEnd(int index);
+
+		boolean overlap(int index1, int index2);
+	}
+
+	public interface PairHandler {
+		void pair(int index1, int index2);
+	}
+
+	private static class IntList {
+		private int[] values = new int[16];
+		private int size;
+
+		private void add(int value) {
+			if (size == values.length)
+				values = Arrays.copyOf(values, size * 2);
+			values[size++] = value;
+		}
+	}
+
+	private static class Node {
+		private float start, end, crossStart, crossEnd;
+		private int index;
+		private int lastIndex;
+		private Node[] children;
+
+		private Node(int index, float start, float end, float crossStart, float crossEnd) {
+			this.index = index;
+			this.lastIndex = index;
+			this.start = start;
+			this.end = end;
+			this.crossStart = crossStart;
+			this.crossEnd = crossEnd;
+		}
+
+		private Node(List<Node> children) {
+			this.children = children.toArray(new Node[children.size()]);
+			start = Float.POSITIVE_INFINITY;
+			end = Float.NEGATIVE_INFINITY;
+			crossStart = Float.POSITIVE_INFINITY;
+			crossEnd = Float.NEGATIVE_INFINITY;
+			lastIndex = -1;
+			for (Node child : children) {
+				start = Math.min(start, child.start);
+				end = Math.max(end, child.end);
+				crossStart = Math.min(crossStart, child.crossStart);
+				crossEnd = Math.max(crossEnd, child.crossEnd);
+				lastIndex = Math.max(lastIndex, child.lastIndex);
+			}
+		}
+	}
+}
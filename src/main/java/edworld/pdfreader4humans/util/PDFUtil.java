@@ -1,19 +1,35 @@
 // This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
 package edworld.pdfreader4humans.util;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
 
 public class PDFUtil {
 	public static PDDocument load(URL url) throws IOException {
+		return load(url, LoadOptions.IN_MEMORY);
+	}
+
+	public static PDDocument load(URL url, LoadOptions options) throws IOException {
+		if (options.isRandomAccessFile() && url.getProtocol().equals("file"))
+			return PDDocument.load(file(url), options.memoryUsageSetting());
 		InputStream input = url.openStream();
 		try {
-			return PDDocument.load(input);
+			return PDDocument.load(input, options.memoryUsageSetting());
 		} finally {
 			input.close();
 		}
 	}
+
+	private static File file(URL url) {
+		try {
+			return new File(url.toURI());
+		} catch (URISyntaxException e) {
+			return new File(url.getPath());
+		}
+	}
 }
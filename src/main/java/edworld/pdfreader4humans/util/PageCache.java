@@ -0,0 +1,103 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import edworld.pdfreader4humans.PDFPage;
+
+/**
+ * Thread-safe cache of values computed for pages, bounded by the total weight
+ * of its values. The least recently used entries are evicted first. Pages are
+ * compared by identity, and all entries of a document can be released at once
+ * when the document is closed.
+ */
+public abstract class PageCache<V> {
+	private long maxWeight;
+	private long weight;
+	private long hits;
+	private long misses;
+	private long evictions;
+	private LinkedHashMap<PDFPage, V> entries = new LinkedHashMap<PDFPage, V>(16, 0.75f, true);
+
+	/**
+	 * @param maxWeight
+	 *            maximum total weight of the cached values; a value heavier
+	 *            than that is not kept at all
+	 */
+	public PageCache(long maxWeight) {
+		if (maxWeight < 0)
+			throw new IllegalArgumentException("Negative maximum weight: " + maxWeight);
+		this.maxWeight = maxWeight;
+	}
+
+	protected abstract long weight(V value);
+
+	public synchronized V get(PDFPage page) {
+		V value = entries.get(page);
+		if (value == null)
+			misses++;
+		else
+			hits++;
+		return value;
+	}
+
+	public synchronized void put(PDFPage page, V value) {
+		V previousValue = entries.put(page, value);
+		if (previousValue != null)
+			weight -= weight(previousValue);
+		weight += weight(value);
+		Iterator<V> values = entries.values().iterator();
+		while (weight > maxWeight && values.hasNext()) {
+			weight -= weight(values.next());
+			values.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Removes the entries of all pages of the given document.
+	 */
+	public synchronized void release(PDDocument doc) {
+		Iterator<Map.Entry<PDFPage, V>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<PDFPage, V> entry = iterator.next();
+			if (entry.getKey().getDoc() == doc) {
+				weight -= weight(entry.getValue());
+				iterator.remove();
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		weight = 0;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+}
@@ -0,0 +1,155 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Sort in reading order of items known by integer ids, as described in
+ * Component.smartSort, so the same sort can read the components themselves
+ * or their coordinates stored in arrays.
+ */
+public abstract class ReadingOrder {
+	/**
+	 * Same as Component.compareTo for the items with the given ids.
+	 */
+	protected abstract int compare(int id1, int id2);
+
+	/**
+	 * Start of the vertical band of the item, which is disjoint from the bands
+	 * of the items it is vertically before or after.
+	 */
+	protected abstract float bandStart(int id);
+
+	protected abstract float bandEnd(int id);
+
+	/**
+	 * @return true when neither item is vertically before the other one
+	 */
+	protected abstract boolean sameBand(int id1, int id2);
+
+	/**
+	 * Sorts the first count ids of the array in place.
+	 */
+	public void sort(final int[] ids, int count) {
+		final long[] firstPairs = new long[count];
+		final int[] partners = new int[count];
+		Arrays.fill(firstPairs, Long.MAX_VALUE);
+		OverlapSearch.forEachOverlappingPair(bands(ids, count), new OverlapSearch.PairHandler() {
+			@Override
+			public void pair(int i, int j) {
+				int before = compare(ids[i], ids[j]) < 0 ? i : j;
+				if (firstPairs[before] == Long.MAX_VALUE) {
+					firstPairs[before] = (long) i << 32 | j;
+					partners[before] = before == i ? j : i;
+				}
+			}
+		});
+		Integer[] moved = movedInPairOrder(firstPairs);
+		int[] afters = new int[count];
+		boolean[] removed = new boolean[count];
+		int[] bandStarts = new int[count];
+		int[] bandEnds = new int[count];
+		int[] nextInBand = new int[count];
+		Arrays.fill(bandStarts, -1);
+		for (int before : moved) {
+			int after = partners[before];
+			while (removed[after])
+				after = afters[after];
+			for (int position = partners[before]; removed[position];) {
+				int next = afters[position];
+				afters[position] = after;
+				position = next;
+			}
+			if (after == before)
+				continue;
+			if (bandStarts[before] >= 0) {
+				appendToBand(after, bandStarts[before], bandEnds[before], bandStarts, bandEnds, nextInBand);
+				bandStarts[before] = -1;
+			}
+			nextInBand[before] = -1;
+			appendToBand(after, before, before, bandStarts, bandEnds, nextInBand);
+			afters[before] = after;
+			removed[before] = true;
+		}
+		List<Integer> remaining = new ArrayList<Integer>(count);
+		for (int i = 0; i < count; i++)
+			if (!removed[i])
+				remaining.add(i);
+		Collections.sort(remaining, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer position1, Integer position2) {
+				return ReadingOrder.this.compare(ids[position1], ids[position2]);
+			}
+		});
+		int[] sorted = new int[count];
+		int sortedCount = 0;
+		for (int after : remaining) {
+			if (bandStarts[after] >= 0) {
+				int bandCount = 0;
+				for (int before = bandStarts[after]; before >= 0; before = nextInBand[before])
+					sorted[sortedCount + bandCount++] = ids[before];
+				int[] band = Arrays.copyOfRange(sorted, sortedCount, sortedCount + bandCount);
+				sort(band, bandCount);
+				System.arraycopy(band, 0, sorted, sortedCount, bandCount);
+				sortedCount += bandCount;
+			}
+			sorted[sortedCount++] = ids[after];
+		}
+		System.arraycopy(sorted, 0, ids, 0, count);
+	}
+
+	private OverlapSearch.Intervals bands(final int[] ids, final int count) {
+		return new OverlapSearch.Intervals() {
+			public int size() {
+				return count;
+			}
+
+			public float start(int index) {
+				return bandStart(ids[index]);
+			}
+
+			public float end(int index) {
+				return bandEnd(ids[index]);
+			}
+
+			public float crossStart(int index) {
+				return Float.NEGATIVE_INFINITY;
+			}
+
+			public float crossEnd(int index) {
+				return Float.POSITIVE_INFINITY;
+			}
+
+			public boolean overlap(int index1, int index2) {
+				return sameBand(ids[index1], ids[index2]);
+			}
+		};
+	}
+
+	private static Integer[] movedInPairOrder(final long[] firstPairs) {
+		List<Integer> moved = new ArrayList<Integer>();
+		for (int i = 0; i < firstPairs.length; i++)
+			if (firstPairs[i] != Long.MAX_VALUE)
+				moved.add(i);
+		Collections.sort(moved, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer index1, Integer index2) {
+				return firstPairs[index1] < firstPairs[index2] ? -1 : 1;
+			}
+		});
+		return moved.toArray(new Integer[moved.size()]);
+	}
+
+	private static void appendToBand(int after, int start, int end, int[] bandStarts, int[] bandEnds,
+			int[] nextInBand) {
+		if (bandStarts[after] < 0)
+			bandStarts[after] = start;
+		else
+			nextInBand[bandEnds[after]] = start;
+		bandEnds[after] = end;
+	}
+}
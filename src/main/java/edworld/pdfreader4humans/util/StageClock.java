@@ -0,0 +1,98 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import edworld.pdfreader4humans.StageListener;
+import edworld.pdfreader4humans.StageListener.Stage;
+
+/**
+ * Measures the consecutive stages of the analysis of a page on the current
+ * thread, summing the cost of a stage that runs more than once, and reports
+ * them to a listener when the page is finished. The clock of
+ * StageListener.NONE measures nothing.
+ */
+public class StageClock {
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+	private static final StageClock NONE = new StageClock(StageListener.NONE, 0) {
+		@Override
+		public void lap(Stage stage, int elementCount) {
+		}
+
+		@Override
+		public void finish() {
+		}
+	};
+	private StageListener listener;
+	private int pageNumber;
+	private long[] wallTimes = new long[Stage.values().length];
+	private long[] cpuTimes = new long[Stage.values().length];
+	private long[] allocatedBytes = new long[Stage.values().length];
+	private int[] elementCounts = new int[Stage.values().length];
+	private boolean[] measured = new boolean[Stage.values().length];
+	private long lastWallTime;
+	private long lastCpuTime;
+	private long lastAllocatedBytes;
+
+	private StageClock(StageListener listener, int pageNumber) {
+		this.listener = listener;
+		this.pageNumber = pageNumber;
+	}
+
+	/**
+	 * Starts measuring the first stage of a page.
+	 */
+	public static StageClock start(StageListener listener, int pageNumber) {
+		if (listener == StageListener.NONE)
+			return NONE;
+		StageClock clock = new StageClock(listener, pageNumber);
+		clock.lastWallTime = System.nanoTime();
+		clock.lastCpuTime = cpuTime();
+		clock.lastAllocatedBytes = allocatedBytes();
+		return clock;
+	}
+
+	/**
+	 * Ends the measurement of a stage, which starts the measurement of the
+	 * next one.
+	 */
+	public void lap(Stage stage, int elementCount) {
+		long wallTime = System.nanoTime();
+		long cpuTime = cpuTime();
+		long allocated = allocatedBytes();
+		int index = stage.ordinal();
+		wallTimes[index] += wallTime - lastWallTime;
+		cpuTimes[index] = difference(cpuTimes[index], cpuTime, lastCpuTime);
+		allocatedBytes[index] = difference(allocatedBytes[index], allocated, lastAllocatedBytes);
+		elementCounts[index] += elementCount;
+		measured[index] = true;
+		lastWallTime = wallTime;
+		lastCpuTime = cpuTime;
+		lastAllocatedBytes = allocated;
+	}
+
+	public void finish() {
+		for (Stage stage : Stage.values())
+			if (measured[stage.ordinal()])
+				listener.stageMeasured(pageNumber, stage, wallTimes[stage.ordinal()], cpuTimes[stage.ordinal()],
+						allocatedBytes[stage.ordinal()], elementCounts[stage.ordinal()]);
+	}
+
+	private long difference(long total, long value, long lastValue) {
+		return total < 0 || value < 0 || lastValue < 0 ? -1 : total + value - lastValue;
+	}
+
+	private static long cpuTime() {
+		return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : -1;
+	}
+
+	private static long allocatedBytes() {
+		if (THREADS instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+			if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled())
+				return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,71 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Tasks submitted to an executor that can be cancelled together. Cancelling
+ * waits until none of them is running any more, so the resources they use
+ * can be released right after it.
+ */
+public class TaskGroup<T> {
+	private ExecutorService executor;
+	private List<Future<T>> futures = new ArrayList<Future<T>>();
+	private int running;
+	private boolean cancelled;
+
+	public TaskGroup(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	public Future<T> submit(final Callable<T> task) {
+		Future<T> future = executor.submit(new Callable<T>() {
+			public T call() throws Exception {
+				synchronized (TaskGroup.this) {
+					if (cancelled)
+						throw new CancellationException();
+					running++;
+				}
+				try {
+					return task.call();
+				} finally {
+					synchronized (TaskGroup.this) {
+						running--;
+						TaskGroup.this.notifyAll();
+					}
+				}
+			}
+		});
+		futures.add(future);
+		return future;
+	}
+
+	public List<Future<T>> getFutures() {
+		return futures;
+	}
+
+	/**
+	 * Cancels the tasks that did not start, interrupts the running ones and
+	 * waits until they stop. An interrupt received while waiting is kept for
+	 * the caller but does not shorten the wait.
+	 */
+	public synchronized void cancelAndAwait() {
+		cancelled = true;
+		for (Future<T> future : futures)
+			future.cancel(true);
+		boolean interrupted = false;
+		while (running > 0)
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+}
@@ -0,0 +1,224 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edworld.pdfreader4humans.Component;
+
+/**
+ * Index over vertical components sorted by Component.orderByXY. It finds the
+ * components that intersect a horizontal one by binary search over X, and
+ * follows vertical extensions inside buckets of components with the same X
+ * bounds, resolving each chain of extensions only once.
+ */
+public class VerticalComponentIndex<T extends Component> {
+	private List<? extends T> components;
+	private Map<Component, Integer> positions = new HashMap<Component, Integer>();
+	private int definedCount;
+	private float[] reachedToX;
+	private Map<Long, Bucket> buckets = new HashMap<Long, Bucket>();
+	private Float[] tops;
+	private Float[] bottoms;
+
+	public VerticalComponentIndex(List<? extends T> components) {
+		this.components = components;
+		definedCount = components.size();
+		while (definedCount > 0 && Float.isNaN(components.get(definedCount - 1).getFromX()))
+			definedCount--;
+		reachedToX = new float[definedCount];
+		float reached = Float.NaN;
+		Map<Long, List<Integer>> bucketPositions = new HashMap<Long, List<Integer>>();
+		for (int i = 0; i < components.size(); i++) {
+			Component component = components.get(i);
+			positions.put(component, i);
+			if (i < definedCount) {
+				reached = reached(reached, component.getToX());
+				reachedToX[i] = reached;
+				if (!Float.isNaN(component.getToX())) {
+					Long key = key(component.getFromX(), component.getToX());
+					if (!bucketPositions.containsKey(key))
+						bucketPositions.put(key, new ArrayList<Integer>());
+					bucketPositions.get(key).add(i);
+				}
+			}
+		}
+		for (Long key : bucketPositions.keySet())
+			buckets.put(key, new Bucket(bucketPositions.get(key)));
+		tops = new Float[components.size()];
+		bottoms = new Float[components.size()];
+	}
+
+	/**
+	 * @return the components that intersect the given one, in list order
+	 */
+	public List<T> intersecting(Component component) {
+		List<T> intersecting = new ArrayList<T>();
+		int start = 0, end = definedCount;
+		while (start < end) {
+			int middle = (start + end) >>> 1;
+			if (reachedToX[middle] >= component.getFromX())
+				end = middle;
+			else
+				start = middle + 1;
+		}
+		for (int i = start; i < definedCount && !(components.get(i).getFromX() > component.getToX()); i++)
+			if (component.intersects(components.get(i)))
+				intersecting.add(components.get(i));
+		return intersecting;
+	}
+
+	/**
+	 * @return whether a component intersects a text with the given bounds
+	 *         without containing it, as Component.intersects and
+	 *         Component.contains tell for a TextComponent
+	 */
+	public boolean crosses(float fromX, float fromY, float toX, float toY) {
+		int start = 0, end = definedCount;
+		while (start < end) {
+			int middle = (start + end) >>> 1;
+			if (reachedToX[middle] >= fromX)
+				end = middle;
+			else
+				start = middle + 1;
+		}
+		for (int i = start; i < definedCount && !(components.get(i).getFromX() > toX); i++) {
+			Component component = components.get(i);
+			if (component.getFromX() <= toX && component.getToX() >= fromX && component.getFromY() <= toY
+					&& component.getToY() >= fromY
+					&& !(component.getFromX() <= fromX && component.getToX() >= toX && component.getFromY() < toY
+							&& component.getToY() >= toY))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the top of the last component reached by repeatedly taking the
+	 *         first upper vertical extension in list order
+	 */
+	public float transitiveTop(Component component) {
+		return transitiveBound(component, true);
+	}
+
+	/**
+	 * @return the bottom of the last component reached by repeatedly taking
+	 *         the first lower vertical extension in list order
+	 */
+	public float transitiveBottom(Component component) {
+		return transitiveBound(component, false);
+	}
+
+	private float transitiveBound(Component component, boolean upper) {
+		Float[] bounds = upper ? tops : bottoms;
+		Integer position = positions.get(component);
+		if (position == null) {
+			Integer next = nextExtension(component, upper);
+			if (next == null)
+				return upper ? component.getFromY() : component.getToY();
+			position = next;
+		}
+		List<Integer> chain = new ArrayList<Integer>();
+		Float bound = bounds[position];
+		while (bound == null) {
+			chain.add(position);
+			Integer next = nextExtension(components.get(position), upper);
+			if (next == null)
+				bound = upper ? components.get(position).getFromY() : components.get(position).getToY();
+			else {
+				position = next;
+				bound = bounds[position];
+			}
+		}
+		for (Integer element : chain)
+			bounds[element] = bound;
+		return bound;
+	}
+
+	private Integer nextExtension(Component component, boolean upper) {
+		if (Float.isNaN(component.getFromX()) || Float.isNaN(component.getToX()))
+			return null;
+		Integer next = nextExtension(buckets.get(key(component.getFromX(), component.getToX())), component, upper);
+		if (component.getFromX() == 0) {
+			Integer otherNext = nextExtension(buckets.get(key(-component.getFromX(), component.getToX())), component,
+					upper);
+			if (next == null || (otherNext != null && otherNext < next))
+				next = otherNext;
+		}
+		return next;
+	}
+
+	private Integer nextExtension(Bucket bucket, Component component, boolean upper) {
+		if (bucket == null)
+			return null;
+		return upper ? bucket.nextUpperExtension(component) : bucket.nextLowerExtension(component);
+	}
+
+	private static Long key(float fromX, float toX) {
+		return (long) Float.floatToRawIntBits(fromX) << 32 | (Float.floatToIntBits(toX + 0.0F) & 0xFFFFFFFFL);
+	}
+
+	private static float reached(float reached, float value) {
+		return value > reached || (Float.isNaN(reached) && !Float.isNaN(value)) ? value : reached;
+	}
+
+	/**
+	 * Components with the same X bounds, sorted by their top.
+	 */
+	private class Bucket {
+		private int[] bucketPositions;
+		private int definedCount;
+		private float[] reachedToY;
+
+		private Bucket(List<Integer> bucketPositions) {
+			this.bucketPositions = new int[bucketPositions.size()];
+			for (int k = 0; k < bucketPositions.size(); k++)
+				this.bucketPositions[k] = bucketPositions.get(k);
+			definedCount = bucketPositions.size();
+			while (definedCount > 0 && Float.isNaN(get(definedCount - 1).getFromY()))
+				definedCount--;
+			reachedToY = new float[definedCount];
+			float reached = Float.NaN;
+			for (int k = 0; k < definedCount; k++) {
+				reached = reached(reached, get(k).getToY());
+				reachedToY[k] = reached;
+			}
+		}
+
+		private T get(int k) {
+			return components.get(bucketPositions[k]);
+		}
+
+		private Integer nextUpperExtension(Component component) {
+			int start = 0, end = definedCount;
+			while (start < end) {
+				int middle = (start + end) >>> 1;
+				if (reachedToY[middle] >= component.getFromY())
+					end = middle;
+				else
+					start = middle + 1;
+			}
+			for (int k = start; k < definedCount && get(k).getFromY() < component.getFromY(); k++)
+				if (component.verticalExtension(get(k)))
+					return bucketPositions[k];
+			return null;
+		}
+
+		private Integer nextLowerExtension(Component component) {
+			int start = 0, end = definedCount;
+			while (start < end) {
+				int middle = (start + end) >>> 1;
+				if (get(middle).getFromY() > component.getFromY())
+					end = middle;
+				else
+					start = middle + 1;
+			}
+			for (int k = start; k < definedCount && !(get(k).getFromY() > component.getToY()); k++)
+				if (component.verticalExtension(get(k)) && get(k).getFromY() > component.getFromY())
+					return bucketPositions[k];
+			return null;
+		}
+	}
+}
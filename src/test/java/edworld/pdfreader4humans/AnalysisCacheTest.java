@@ -0,0 +1,107 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static org.apache.commons.io.FileUtils.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edworld.pdfreader4humans.impl.MainBoxDetector;
+import edworld.pdfreader4humans.impl.MainMarginDetector;
+import edworld.pdfreader4humans.impl.MainPDFComponentLocator;
+
+public class AnalysisCacheTest {
+	private File directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("analyses").toFile();
+	}
+
+	@Test
+	public void restoreSameAnalysis() throws IOException {
+		AnalysisCache cache = new AnalysisCache(directory, Long.MAX_VALUE);
+		for (String testcase : new String[] { "/testcase1/input.pdf", "/testcase8/input.pdf" }) {
+			PDFReader reader = reader(testcase, cache);
+			PDFReader cachedReader = reader(testcase, cache);
+			assertEquals(reader.toXML(), cachedReader.toXML());
+			assertEquals(reader.toTextLines(), cachedReader.toTextLines());
+			assertEquals(reader.getNumberOfPages(), cachedReader.getNumberOfPages());
+			for (int page = 1; page <= reader.getNumberOfPages(); page++) {
+				PageGeometry geometry = reader.getPageGeometry(page);
+				PageGeometry cachedGeometry = cachedReader.getPageGeometry(page);
+				assertEquals(geometry.getCropBox().toString(), cachedGeometry.getCropBox().toString());
+				assertEquals(geometry.getMediaBox().toString(), cachedGeometry.getMediaBox().toString());
+				assertEquals(geometry.getRotation(), cachedGeometry.getRotation());
+			}
+		}
+		assertEquals(2, cache.getHits());
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public void keyDependsOnConfiguration() throws IOException {
+		AnalysisCache cache = new AnalysisCache(directory, Long.MAX_VALUE);
+		assertFalse(cache.key(getClass().getResource("/testcase2/input.pdf"), "a").equals(
+				cache.key(getClass().getResource("/testcase2/input.pdf"), "b")));
+		assertFalse(cache.key(getClass().getResource("/testcase2/input.pdf"), "a").equals(
+				cache.key(getClass().getResource("/testcase7/input.pdf"), "a")));
+	}
+
+	@Test
+	public void evictLeastRecentlyUsedAnalyses() throws IOException {
+		AnalysisCache cache = new AnalysisCache(directory, Long.MAX_VALUE);
+		reader("/testcase2/input.pdf", cache);
+		File olderFile = analysisFiles()[0];
+		olderFile.setLastModified(System.currentTimeMillis() - 60000);
+		reader("/testcase7/input.pdf", cache);
+		cache = new AnalysisCache(directory, FileUtils.sizeOfDirectory(directory) - 1);
+		cache.evict();
+		assertEquals(1, analysisFiles().length);
+		assertFalse(olderFile.exists());
+		reader("/testcase7/input.pdf", cache);
+		assertEquals(1, cache.getHits());
+	}
+
+	@Test
+	public void ignoreCorruptAnalysis() throws IOException {
+		AnalysisCache cache = new AnalysisCache(directory, Long.MAX_VALUE);
+		reader("/testcase7/input.pdf", cache);
+		write(analysisFiles()[0], "corrupt", "UTF-8");
+		String key = analysisFiles()[0].getName().replace(".analysis", "");
+		assertNull(cache.load(key));
+		assertEquals(0, analysisFiles().length);
+		assertTrue(reader("/testcase7/input.pdf", cache).toXML().length() > 0);
+		assertEquals(1, analysisFiles().length);
+	}
+
+	private File[] analysisFiles() {
+		return directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.getName().endsWith(".analysis");
+			}
+		});
+	}
+
+	private PDFReader reader(String resourceName, AnalysisCache cache) throws IOException {
+		return new PDFReader(getClass().getResource(resourceName), new MainPDFComponentLocator(),
+				new MainBoxDetector(), new MainMarginDetector(), new ReaderOptions().analysisCache(cache));
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(directory);
+	}
+}
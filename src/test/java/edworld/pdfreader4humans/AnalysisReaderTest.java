@@ -0,0 +1,202 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edworld.pdfreader4humans.impl.MainBoxDetector;
+import edworld.pdfreader4humans.impl.MainMarginDetector;
+import edworld.pdfreader4humans.impl.MainPDFComponentLocator;
+
+public class AnalysisReaderTest {
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("pdfreader4humans", ".analysis");
+	}
+
+	@Test
+	public void restoreSavedAnalysis() throws IOException {
+		for (int testcase = 1; testcase <= 8; testcase++) {
+			PDFReader reader = reader("/testcase" + testcase + "/input.pdf");
+			save(reader);
+			AnalysisReader analysisReader = new AnalysisReader(file);
+			try {
+				PDFReader savedReader = new PDFReader(analysisReader);
+				assertEquals(reader.toXML(), savedReader.toXML());
+				assertEquals(reader.getNumberOfPages(), savedReader.getNumberOfPages());
+				for (int page = 1; page <= reader.getNumberOfPages(); page++)
+					assertEquals(geometry(reader.getPageGeometry(page)), geometry(savedReader.getPageGeometry(page)));
+			} finally {
+				analysisReader.close();
+			}
+			assertTrue(file.length() < reader.toXML().length());
+		}
+	}
+
+	@Test
+	public void readPageDirectly() throws IOException {
+		PDFReader reader = reader("/testcase8/input.pdf");
+		save(reader);
+		AnalysisReader analysisReader = new AnalysisReader(file);
+		try {
+			for (int page = reader.getNumberOfPages(); page >= 1; page--) {
+				assertEquals(pageXML(reader, page, reader.getFirstLevelComponents(page)),
+						pageXML(reader, page, analysisReader.getFirstLevelComponents(page)));
+				assertEquals(geometry(reader.getPageGeometry(page)),
+						geometry(analysisReader.getPageGeometry(page)));
+			}
+		} finally {
+			analysisReader.close();
+		}
+	}
+
+	@Test
+	public void streamPages() throws IOException {
+		final PDFReader reader = reader("/testcase2/input.pdf");
+		save(reader);
+		final List<Integer> pageNumbers = new ArrayList<Integer>();
+		InputStream input = new FileInputStream(file);
+		try {
+			AnalysisReader.readPages(input, new AnalysisReader.PageHandler() {
+				@Override
+				public void page(int pageNumber, PageGeometry geometry, List<Component> firstLevelComponents) {
+					pageNumbers.add(pageNumber);
+					assertEquals(pageXML(reader, pageNumber, reader.getFirstLevelComponents(pageNumber)),
+							pageXML(reader, pageNumber, firstLevelComponents));
+				}
+			});
+		} finally {
+			input.close();
+		}
+		assertEquals(reader.getNumberOfPages(), pageNumbers.size());
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectTruncatedAnalysis() throws IOException {
+		save(reader("/testcase2/input.pdf"));
+		new FileOutputStream(file, true).getChannel().truncate(file.length() - 1).close();
+		new AnalysisReader(file);
+	}
+
+	@Test
+	public void rejectCorruptPageIndex() throws IOException {
+		save(reader("/testcase2/input.pdf"));
+		RandomAccessFile analysis = new RandomAccessFile(file, "rw");
+		try {
+			analysis.seek(file.length() - 12);
+			long indexOffset = analysis.readLong();
+			analysis.seek(indexOffset + 1);
+			analysis.write(new byte[] { -1, -1, -1, -1, 0x0F });
+			assertRejected();
+			analysis.seek(indexOffset + 1);
+			analysis.write(new byte[] { -1, -1, -1, 0x7F });
+			assertRejected();
+			analysis.seek(indexOffset + 1);
+			analysis.writeByte(2);
+			analysis.writeLong(indexOffset);
+			assertRejected();
+			analysis.seek(indexOffset + 2);
+			analysis.writeLong(8);
+			analysis.writeLong(8);
+			assertRejected();
+		} finally {
+			analysis.close();
+		}
+	}
+
+	@Test
+	public void rejectAnalysisWithFailedPage() throws IOException {
+		PDFReader reader = reader("/testcase2/input.pdf");
+		AnalysisWriter writer = new AnalysisWriter(new FileOutputStream(file));
+		try {
+			writer.writePage(reader.getPageGeometry(1), reader.getFirstLevelComponents(1));
+			List<Component> unknownComponents = new ArrayList<Component>();
+			unknownComponents.add(new TextComponent("x", 0, 0, 10, 10, "Times", 7) {
+			});
+			writer.writePage(reader.getPageGeometry(1), unknownComponents);
+			fail();
+		} catch (IOException e) {
+		} finally {
+			writer.close();
+		}
+		assertRejected();
+	}
+
+	@Test
+	public void rejectAnalysisOfFailedReader() throws IOException {
+		PDFReader reader = new PDFReader(getClass().getResource("/testcase6/input.pdf"),
+				new MainPDFComponentLocator(), new MainBoxDetector(), new MainMarginDetector()) {
+			@Override
+			public List<Component> getFirstLevelComponents(int pageNumber) {
+				if (pageNumber == 3)
+					throw new IllegalArgumentException("page 3");
+				return super.getFirstLevelComponents(pageNumber);
+			}
+		};
+		try {
+			save(reader);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+		assertRejected();
+	}
+
+	private void assertRejected() {
+		try {
+			new AnalysisReader(file).close();
+			fail();
+		} catch (IOException e) {
+		}
+	}
+
+	private void save(PDFReader reader) throws IOException {
+		OutputStream output = new FileOutputStream(file);
+		try {
+			reader.writeAnalysis(output);
+		} finally {
+			output.close();
+		}
+	}
+
+	private String pageXML(PDFReader reader, int pageNumber, List<Component> pageFirstLevelComponents) {
+		StringWriter writer = new StringWriter();
+		try {
+			reader.writePage(writer, pageNumber, pageFirstLevelComponents, 0);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return writer.toString();
+	}
+
+	private String geometry(PageGeometry geometry) {
+		return geometry.getCropBox() + " " + geometry.getMediaBox() + " " + geometry.getRotation();
+	}
+
+	private PDFReader reader(String resourceName) throws IOException {
+		return new PDFReader(getClass().getResource(resourceName), new MainPDFComponentLocator(),
+				new MainBoxDetector(), new MainMarginDetector());
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+}
@@ -0,0 +1,102 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static org.apache.commons.io.FileUtils.copyURLToFile;
+import static org.apache.commons.io.FileUtils.readFileToString;
+import static org.apache.commons.io.FileUtils.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edworld.pdfreader4humans.impl.MainBoxDetector;
+import edworld.pdfreader4humans.impl.MainMarginDetector;
+import edworld.pdfreader4humans.impl.MainPDFComponentLocator;
+import edworld.pdfreader4humans.util.LoadOptions;
+
+public class BatchPDFReaderTest {
+	private File directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("batch").toFile();
+	}
+
+	@Test
+	public void convertDirectoryDespiteFailures() throws IOException {
+		File sourceDirectory = new File(directory, "source");
+		copyURLToFile(getClass().getResource("/testcase2/input.pdf"), new File(sourceDirectory, "second.pdf"));
+		copyURLToFile(getClass().getResource("/testcase7/input.pdf"), new File(sourceDirectory, "seventh.pdf"));
+		write(new File(sourceDirectory, "broken.pdf"), "not a PDF", "UTF-8");
+		write(new File(sourceDirectory, "notes.txt"), "not converted", "UTF-8");
+		File targetDirectory = new File(directory, "target");
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		BatchPDFReader batchReader = new BatchPDFReader(true, 2, LoadOptions.IN_MEMORY, new PrintStream(log, true,
+				"UTF-8"));
+		assertEquals(3, BatchPDFReader.sourceFiles(sourceDirectory).size());
+		assertEquals(1, batchReader.convert(BatchPDFReader.sourceFiles(sourceDirectory), targetDirectory));
+		assertEquals(xml("/testcase2/input.pdf"), readFileToString(new File(targetDirectory, "second.xml"), "UTF-8"));
+		assertEquals(xml("/testcase7/input.pdf"), readFileToString(new File(targetDirectory, "seventh.xml"), "UTF-8"));
+		assertFalse(new File(targetDirectory, "notes.xml").exists());
+		String logText = log.toString("UTF-8");
+		assertTrue(logText.contains("FAILED " + new File(sourceDirectory, "broken.pdf")));
+		assertTrue(logText.contains("OK " + new File(sourceDirectory, "second.pdf")));
+		assertTrue(logText.contains("Converted 2 of 3 PDFs"));
+	}
+
+	@Test
+	public void failDocumentsWithTheSameTargetOrThrowingErrors() throws IOException {
+		File first = new File(directory, "a/x.pdf");
+		File second = new File(directory, "b/X.pdf");
+		File third = new File(directory, "c/error.pdf");
+		copyURLToFile(getClass().getResource("/testcase2/input.pdf"), first);
+		copyURLToFile(getClass().getResource("/testcase7/input.pdf"), second);
+		copyURLToFile(getClass().getResource("/testcase7/input.pdf"), third);
+		File targetDirectory = new File(directory, "target");
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		BatchPDFReader batchReader = new BatchPDFReader(true, 2, LoadOptions.IN_MEMORY, new PrintStream(log, true,
+				"UTF-8")) {
+			@Override
+			protected void convert(File sourceFile, File targetFile) throws IOException {
+				if (sourceFile.getName().equals("error.pdf"))
+					throw new AssertionError("unexpected");
+				super.convert(sourceFile, targetFile);
+			}
+		};
+		assertEquals(2, batchReader.convert(Arrays.asList(first, second, third), targetDirectory));
+		assertEquals(xml("/testcase2/input.pdf"), readFileToString(new File(targetDirectory, "x.xml"), "UTF-8"));
+		String logText = log.toString("UTF-8");
+		assertTrue(logText.contains("OK " + first));
+		assertTrue(logText.contains("FAILED " + second));
+		assertTrue(logText.contains("FAILED " + third));
+		assertTrue(logText.contains("Converted 1 of 3 PDFs"));
+	}
+
+	@Test
+	public void readFileList() throws IOException {
+		File list = new File(directory, "list.txt");
+		write(list, "a.pdf\n\n  b.PDF \n", "UTF-8");
+		assertEquals("[a.pdf, b.PDF]", BatchPDFReader.sourceFiles(list).toString());
+	}
+
+	private String xml(String resourceName) throws IOException {
+		return new PDFReader(getClass().getResource(resourceName), new MainPDFComponentLocator(),
+				new MainBoxDetector(), new MainMarginDetector()).toXML();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(directory);
+	}
+}
@@ -0,0 +1,100 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ComponentTest {
+	private Random random = new Random(11);
+
+	@Test
+	public void smartSortAsPairwiseBands() {
+		for (int round = 0; round < 200; round++) {
+			List<Component> components = new ArrayList<Component>();
+			int count = 1 + random.nextInt(120);
+			for (int i = 0; i < count; i++) {
+				float fromX = random.nextInt(60) * 5, fromY = random.nextInt(40) * 10 + random.nextInt(3);
+				if (random.nextInt(8) == 0)
+					components.add(new BoxComponent(fromX, fromY, fromX + random.nextInt(200), fromY
+							+ random.nextInt(150), 1, true, true, true, true));
+				else
+					components.add(new TextComponent("x", fromX, fromY, fromX + random.nextInt(40), fromY + 6
+							+ random.nextInt(3), "Times", 7));
+			}
+			List<Component> expected = new ArrayList<Component>(components);
+			pairwiseSmartSort(expected);
+			Component.smartSort(components);
+			assertEquals(expected, components);
+		}
+	}
+
+	@Test
+	public void smartSortChainedBands() {
+		List<Component> components = new ArrayList<Component>();
+		components.add(new TextComponent("below", 10, 40, 40, 48, "Times", 7));
+		components.add(new TextComponent("right", 100, 16, 130, 24, "Times", 7));
+		components.add(new TextComponent("middle", 60, 22, 90, 30, "Times", 7));
+		components.add(new TextComponent("left", 10, 10, 40, 18, "Times", 7));
+		components.add(new BoxComponent(5, 35, 200, 60, 1, true, true, true, true));
+		Component.smartSort(components);
+		assertEquals("left middle right box below", texts(components));
+	}
+
+	private String texts(List<Component> components) {
+		String texts = "";
+		for (Component component : components)
+			texts += (texts.isEmpty() ? "" : " ")
+					+ (component instanceof TextComponent ? ((TextComponent) component).getText() : component.getType());
+		return texts;
+	}
+
+	private static <T extends Component> void pairwiseSmartSort(List<T> list) {
+		Map<T, List<T>> mapRemovedAfter = new HashMap<T, List<T>>();
+		Map<T, T> mapRemovedBefore = new HashMap<T, T>();
+		for (int i = 0; i < list.size(); i++) {
+			T component1 = list.get(i);
+			for (int j = i + 1; j < list.size(); j++) {
+				T component2 = list.get(j);
+				if (!component1.verticallyBefore(component2) && !component1.verticallyAfter(component2)) {
+					T afterComponent;
+					T beforeComponent;
+					if (component1.compareTo(component2) < 0) {
+						afterComponent = component2;
+						beforeComponent = component1;
+					} else {
+						afterComponent = component1;
+						beforeComponent = component2;
+					}
+					if (!mapRemovedBefore.containsKey(beforeComponent)) {
+						while (mapRemovedBefore.containsKey(afterComponent))
+							afterComponent = mapRemovedBefore.get(afterComponent);
+						if (!mapRemovedAfter.containsKey(afterComponent))
+							mapRemovedAfter.put(afterComponent, new ArrayList<T>());
+						if (mapRemovedAfter.containsKey(beforeComponent)) {
+							mapRemovedAfter.get(afterComponent).addAll(mapRemovedAfter.get(beforeComponent));
+							mapRemovedAfter.remove(beforeComponent);
+						}
+						mapRemovedAfter.get(afterComponent).add(beforeComponent);
+						mapRemovedBefore.put(beforeComponent, afterComponent);
+					}
+				}
+			}
+		}
+		for (T componentAfter : mapRemovedAfter.keySet())
+			list.removeAll(mapRemovedAfter.get(componentAfter));
+		Collections.sort(list);
+		for (T componentAfter : mapRemovedAfter.keySet()) {
+			List<T> beforeList = mapRemovedAfter.get(componentAfter);
+			pairwiseSmartSort(beforeList);
+			list.addAll(list.indexOf(componentAfter), beforeList);
+		}
+	}
+}
@@ -0,0 +1,135 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static org.apache.commons.io.IOUtils.copy;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edworld.pdfreader4humans.impl.MainBoxDetector;
+import edworld.pdfreader4humans.impl.MainMarginDetector;
+import edworld.pdfreader4humans.impl.MainPDFComponentLocator;
+import edworld.pdfreader4humans.util.LoadOptions;
+
+public class ExtractionServerTest {
+	private ExtractionServer server;
+	private String address;
+	private File directory;
+	private AnalysisCache cache;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("analyses").toFile();
+		cache = new AnalysisCache(directory, Long.MAX_VALUE);
+		server = new ExtractionServer(0, 2, 4, LoadOptions.IN_MEMORY, cache);
+		server.start();
+		address = "http://localhost:" + server.getAddress().getPort();
+	}
+
+	@Test
+	public void extractUploadedPDF() throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(address + "/xml").openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		OutputStream output = connection.getOutputStream();
+		InputStream input = getClass().getResourceAsStream("/testcase7/input.pdf");
+		try {
+			copy(input, output);
+		} finally {
+			input.close();
+			output.close();
+		}
+		assertEquals(200, connection.getResponseCode());
+		assertNotNull(connection.getHeaderField("X-Queue-Time"));
+		assertNotNull(connection.getHeaderField("X-Processing-Time"));
+		assertEquals(reader("/testcase7/input.pdf").toXML(), IOUtils.toString(connection.getInputStream(), "UTF-8"));
+	}
+
+	@Test
+	public void extractLocalPDF() throws IOException, URISyntaxException {
+		String path = new File(getClass().getResource("/testcase2/input.pdf").toURI()).getPath();
+		HttpURLConnection connection = (HttpURLConnection) new URL(address + "/txt?path="
+				+ URLEncoder.encode(path, "UTF-8")).openConnection();
+		assertEquals(200, connection.getResponseCode());
+		StringBuilder text = new StringBuilder();
+		for (String line : reader("/testcase2/input.pdf").toTextLines())
+			text.append(line).append(PDFReader.LINE_BREAK);
+		assertEquals(text.toString(), IOUtils.toString(connection.getInputStream(), "UTF-8"));
+	}
+
+	@Test
+	public void reuseCachedAnalysis() throws IOException, URISyntaxException {
+		String path = new File(getClass().getResource("/testcase7/input.pdf").toURI()).getPath();
+		URL url = new URL(address + "/xml?path=" + URLEncoder.encode(path, "UTF-8"));
+		String xml = IOUtils.toString(url.openStream(), "UTF-8");
+		assertEquals(0, cache.getHits());
+		assertEquals(xml, IOUtils.toString(url.openStream(), "UTF-8"));
+		assertEquals(1, cache.getHits());
+	}
+
+	@Test
+	public void refuseRequestWithoutPDF() throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(address + "/xml").openConnection();
+		assertEquals(400, connection.getResponseCode());
+		connection = (HttpURLConnection) new URL(address + "/xml?path=missing.pdf").openConnection();
+		assertEquals(404, connection.getResponseCode());
+	}
+
+	@Test(timeout = 60000)
+	public void refuseRequestsBeyondMaximumQueue() throws IOException, InterruptedException {
+		List<HttpURLConnection> blocked = new ArrayList<HttpURLConnection>();
+		List<OutputStream> bodies = new ArrayList<OutputStream>();
+		try {
+			for (int i = 0; i < 2 + 4; i++) {
+				HttpURLConnection connection = (HttpURLConnection) new URL(address + "/xml").openConnection();
+				connection.setRequestMethod("POST");
+				connection.setDoOutput(true);
+				connection.setChunkedStreamingMode(0);
+				blocked.add(connection);
+				OutputStream output = connection.getOutputStream();
+				bodies.add(output);
+				output.write("%PDF-".getBytes("UTF-8"));
+				output.flush();
+			}
+			while (server.availableAdmissions() > 0)
+				Thread.sleep(10);
+			HttpURLConnection refused = (HttpURLConnection) new URL(address + "/xml").openConnection();
+			assertEquals(503, refused.getResponseCode());
+			for (OutputStream body : bodies)
+				body.close();
+			for (HttpURLConnection connection : blocked)
+				assertEquals(422, connection.getResponseCode());
+		} finally {
+			for (HttpURLConnection connection : blocked)
+				connection.disconnect();
+		}
+	}
+
+	private PDFReader reader(String resourceName) throws IOException {
+		return new PDFReader(getClass().getResource(resourceName), new MainPDFComponentLocator(),
+				new MainBoxDetector(), new MainMarginDetector());
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.stop();
+		FileUtils.deleteDirectory(directory);
+	}
+}
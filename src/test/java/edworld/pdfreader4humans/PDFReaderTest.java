@@ -2,19 +2,40 @@
 package edworld.pdfreader4humans;
 
 import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static java.lang.System.getProperty;
 import static org.apache.commons.io.IOUtils.readLines;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.imageio.ImageIO;
 
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
 import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -22,6 +43,9 @@ import org.junit.Test;
 import edworld.pdfreader4humans.impl.MainBoxDetector;
 import edworld.pdfreader4humans.impl.MainMarginDetector;
 import edworld.pdfreader4humans.impl.MainPDFComponentLocator;
+import edworld.pdfreader4humans.util.ComponentArrays;
+import edworld.pdfreader4humans.util.LoadOptions;
+import edworld.pdfreader4humans.util.PDFUtil;
 
 public class PDFReaderTest {
 	private static final String UTF_8 = "UTF-8";
@@ -65,6 +89,185 @@ public class PDFReaderTest {
 		assertEquals(text(readLinesFromResource("/testcase6/output.xml")), reader6.toXML());
 	}
 
+	@Test
+	public void writeXML() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		reader6.writeXML(output);
+		assertEquals(text(readLinesFromResource("/testcase6/output.xml")), output.toString(UTF_8));
+	}
+
+	@Test
+	public void toJSON() throws IOException {
+		String xml = reader6.toXML();
+		String json = reader6.toJSON(true);
+		assertTrue(json.startsWith("{\"pages\":[{\"id\":1,\"components\":[{\"type\":"));
+		assertTrue(json.endsWith("]}]}"));
+		assertEquals(-1, json.indexOf('\n'));
+		assertEquals(xml.split("<text ").length, json.split("\"type\":\"text\"").length);
+		assertEquals(xml.split("<box ").length, json.split("\"type\":\"box\"").length);
+		assertEquals(xml.split("<page ").length, json.split("\"components\":").length);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		reader6.writeJSON(output, false);
+		assertEquals(reader6.toJSON(), output.toString(UTF_8));
+		assertEquals(json, reader6.toJSON().replaceAll("(?m)^\t*|" + getProperty("line.separator") + "|(?<=\":) ", ""));
+	}
+
+	@Test
+	public void readWithScratchFile() throws IOException {
+		PDFReader scratchReader = new PDFReader(PDFReaderTest.class.getResource("/testcase6/input.pdf"),
+				new MainPDFComponentLocator(), new MainBoxDetector(), new MainMarginDetector(),
+				new ReaderOptions().loadOptions(LoadOptions.scratchFile(0)));
+		assertEquals(reader6.toXML(), scratchReader.toXML());
+	}
+
+	@Test
+	public void measureStages() throws IOException {
+		StageReport report = new StageReport();
+		PDFReader measuredReader = new PDFReader(PDFReaderTest.class.getResource("/testcase1/input.pdf"),
+				new MainPDFComponentLocator(), new MainBoxDetector(), new MainMarginDetector(),
+				new ReaderOptions().stageListener(report));
+		assertEquals(reader1.toXML(), measuredReader.toXML());
+		List<StageReport.Measurement> measurements = report.getMeasurements();
+		assertEquals(measuredReader.getNumberOfPages() * StageListener.Stage.values().length, measurements.size());
+		assertEquals(StageListener.Stage.GRID_LOCATION, measurements.get(0).getStage());
+		assertEquals(172, measurements.get(0).getElementCount());
+		assertEquals(233, measurements.get(1).getElementCount());
+		assertEquals(reader1.getFirstLevelComponents(1).size(), measurements.get(7).getElementCount());
+		for (StageReport.Measurement measurement : measurements)
+			assertTrue(measurement.getWallTime() >= 0);
+		StringWriter writer = new StringWriter();
+		report.write(writer);
+		String[] lines = writer.toString().split(getProperty("line.separator"));
+		assertEquals("page,stage,wallTimeNanos,cpuTimeNanos,allocatedBytes,elements", lines[0]);
+		assertEquals(1 + measurements.size() + StageListener.Stage.values().length, lines.length);
+		assertTrue(lines[lines.length - 1].startsWith("total,MARGIN_EXPANSION,"));
+	}
+
+	@Test
+	public void readPagesOnDemand() throws IOException {
+		PDFReader lazyReader = new PDFReader(PDFReaderTest.class.getResource("/testcase6/input.pdf"),
+				new MainPDFComponentLocator(), new MainBoxDetector(), new MainMarginDetector(),
+				new ReaderOptions().maxCachedPages(2));
+		try {
+			assertEquals(14, lazyReader.getNumberOfPages());
+			List<Component> page3 = lazyReader.getFirstLevelComponents(3);
+			assertSame(page3, lazyReader.getFirstLevelComponents(3));
+			assertEquals(reader6.toXML(), lazyReader.toXML());
+			assertNotSame(page3, lazyReader.getFirstLevelComponents(3));
+			assertEquals(reader6.toTextLines(), lazyReader.toTextLines());
+		} finally {
+			lazyReader.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectExecutorForPagesOnDemand() throws IOException {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			new PDFReader(PDFReaderTest.class.getResource("/testcase1/input.pdf"), new MainPDFComponentLocator(),
+					new MainBoxDetector(), new MainMarginDetector(), new ReaderOptions().maxCachedPages(1)
+							.executor(executor));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void readCachedPagesWhileAnotherPageIsAnalysed() throws Exception {
+		final CountDownLatch analysing = new CountDownLatch(1);
+		final CountDownLatch finish = new CountDownLatch(1);
+		final PDFReader lazyReader = new PDFReader(PDFReaderTest.class.getResource("/testcase6/input.pdf"),
+				new MainPDFComponentLocator(), new MainBoxDetector(), new MainMarginDetector(),
+				new ReaderOptions().maxCachedPages(14)) {
+			@Override
+			protected List<Component> readPage(PDFPage page, PDFComponentLocator componentLocator,
+					BoxDetector boxDetector, MarginDetector marginDetector) throws IOException {
+				if (page.getIndex() == 1) {
+					analysing.countDown();
+					try {
+						finish.await();
+					} catch (InterruptedException e) {
+						throw new IOException(e);
+					}
+				}
+				return super.readPage(page, componentLocator, boxDetector, marginDetector);
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			List<Component> page1 = lazyReader.getFirstLevelComponents(1);
+			Callable<List<Component>> page2 = new Callable<List<Component>>() {
+				public List<Component> call() {
+					return lazyReader.getFirstLevelComponents(2);
+				}
+			};
+			Future<List<Component>> firstRequest = executor.submit(page2);
+			analysing.await();
+			Future<List<Component>> secondRequest = executor.submit(page2);
+			assertSame(page1, lazyReader.getFirstLevelComponents(1));
+			assertEquals(pageXML(reader6, 3, reader6.getFirstLevelComponents(3)),
+					pageXML(lazyReader, 3, lazyReader.getFirstLevelComponents(3)));
+			assertFalse(firstRequest.isDone());
+			finish.countDown();
+			assertSame(firstRequest.get(), secondRequest.get());
+			assertEquals(pageXML(reader6, 2, reader6.getFirstLevelComponents(2)),
+					pageXML(lazyReader, 2, firstRequest.get()));
+		} finally {
+			finish.countDown();
+			executor.shutdown();
+			lazyReader.close();
+		}
+	}
+
+	@Test
+	public void readPagesInParallel() throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			PDFReader parallelReader6 = new PDFReader(PDFReaderTest.class.getResource("/testcase6/input.pdf"),
+					new MainPDFComponentLocator(), new MainBoxDetector(), new MainMarginDetector(),
+					new ReaderOptions().executor(executor));
+			PDFReader parallelReader8 = new PDFReader(PDFReaderTest.class.getResource("/testcase8/input.pdf"),
+					new MainPDFComponentLocator(), new MainBoxDetector(), new MainMarginDetector(),
+					new ReaderOptions().tolerance(0.5F).executor(executor));
+			assertEquals(reader6.toXML(), parallelReader6.toXML());
+			assertEquals(reader8.toXML(), parallelReader8.toXML());
+			assertEquals(reader8.toTextLines(), parallelReader8.toTextLines());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void createPageImagesInParallel() throws IOException {
+		final Map<Integer, byte[]> pngs = new ConcurrentHashMap<Integer, byte[]>();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			reader6.createPageImages(2, 5, 1, Color.WHITE, Color.BLACK, true, executor, new PNGPageImageSink() {
+				@Override
+				protected OutputStream openOutputStream(final int pageNumber) {
+					return new ByteArrayOutputStream() {
+						@Override
+						public void close() {
+							pngs.put(pageNumber, toByteArray());
+						}
+					};
+				}
+			});
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(4, pngs.size());
+		for (int pageNumber = 2; pageNumber <= 5; pageNumber++) {
+			BufferedImage expected = reader6.createPageImage(pageNumber, 1, Color.WHITE, Color.BLACK, true);
+			BufferedImage image = ImageIO.read(new ByteArrayInputStream(pngs.get(pageNumber)));
+			assertEquals(expected.getWidth(), image.getWidth());
+			assertEquals(expected.getHeight(), image.getHeight());
+			for (int y = 0; y < image.getHeight(); y++)
+				for (int x = 0; x < image.getWidth(); x++)
+					assertEquals(expected.getRGB(x, y), image.getRGB(x, y));
+		}
+	}
+
 	@Test
 	public void toTextLines() throws IOException {
 //		for (Component component : reader3.getFirstLevelComponents(1)) {
@@ -132,6 +335,104 @@ public class PDFReaderTest {
 				ImageIO.read(outputFile));
 	}
 
+	@Test
+	public void getPageGeometry() throws IOException {
+		PDDocument doc = PDFUtil.load(PDFReaderTest.class.getResource("/testcase8/input.pdf"));
+		try {
+			for (int pageNumber = 1; pageNumber <= doc.getNumberOfPages(); pageNumber++) {
+				PDPage page = doc.getPage(pageNumber - 1);
+				PageGeometry geometry = reader8.getPageGeometry(pageNumber);
+				assertEquals(page.getCropBox().toString(), geometry.getCropBox().toString());
+				assertEquals(page.getMediaBox().toString(), geometry.getMediaBox().toString());
+				assertEquals(page.getRotation(), geometry.getRotation());
+			}
+		} finally {
+			doc.close();
+		}
+	}
+
+	@Test
+	public void groupConnectedComponents() {
+		Random random = new Random(7);
+		for (int round = 0; round < 50; round++) {
+			List<Component> components = new ArrayList<Component>();
+			for (int i = 0; i < 200; i++) {
+				float x = random.nextInt(500), y = random.nextInt(500);
+				if (random.nextBoolean())
+					components.add(new GridComponent("line", x, y, x + random.nextInt(80), y, 1));
+				else
+					components.add(new GridComponent("line", x, y, x, y + random.nextInt(80), 1));
+			}
+			assertEquals(pairwiseGroups(components).toString(), groups(components).toString());
+		}
+	}
+
+	@Test
+	public void groupCrossingLines() {
+		List<Component> components = new ArrayList<Component>();
+		components.add(new GridComponent("line", 0, 0, 10, 0, 1));
+		components.add(new GridComponent("line", 50, 0, 60, 0, 1));
+		components.add(new GridComponent("line", 5, -5, 5, 5, 1));
+		components.add(new GridComponent("line", 55, -5, 55, 5, 1));
+		components.add(new GridComponent("line", 200, 200, 210, 200, 1));
+		assertEquals("[group :: 0.0, -5.0, 10.0, 5.0, group :: 50.0, -5.0, 60.0, 5.0]", groups(components)
+				.toString());
+		components.add(new GridComponent("line", 10, 0, 50, 0, 1));
+		assertEquals("[group :: 0.0, -5.0, 60.0, 5.0]", groups(components).toString());
+	}
+
+	private List<Component> groups(List<Component> components) {
+		ComponentArrays arrays = new ComponentArrays(components.size());
+		arrays.addAll(components);
+		reader1.groupConnectedComponents(arrays, 0, components.size());
+		return arrays.subList(components.size(), arrays.size());
+	}
+
+	private String pageXML(PDFReader reader, int pageNumber, List<Component> pageFirstLevelComponents)
+			throws IOException {
+		StringWriter writer = new StringWriter();
+		reader.writePage(writer, pageNumber, pageFirstLevelComponents, 0);
+		return writer.toString();
+	}
+
+	private List<Component> pairwiseGroups(List<Component> components) {
+		Map<Component, Integer> groupMap = new HashMap<Component, Integer>();
+		int lastGroupIndex = 0;
+		for (int i = 0; i < components.size(); i++)
+			for (int j = i + 1; j < components.size(); j++)
+				if (components.get(i).intersects(components.get(j))) {
+					Integer groupIndex1 = groupMap.get(components.get(i));
+					Integer groupIndex2 = groupMap.get(components.get(j));
+					if (groupIndex1 == null && groupIndex2 == null) {
+						lastGroupIndex++;
+						groupMap.put(components.get(i), lastGroupIndex);
+						groupMap.put(components.get(j), lastGroupIndex);
+					} else if (groupIndex2 == null)
+						groupMap.put(components.get(j), groupIndex1);
+					else if (groupIndex1 == null)
+						groupMap.put(components.get(i), groupIndex2);
+					else if (!groupIndex1.equals(groupIndex2))
+						for (Component component : groupMap.keySet())
+							if (groupMap.get(component).equals(groupIndex2))
+								groupMap.put(component, groupIndex1);
+				}
+		List<Component> groups = new ArrayList<Component>();
+		for (int groupIndex = 1; groupIndex <= lastGroupIndex; groupIndex++) {
+			float fromX = Float.POSITIVE_INFINITY, fromY = Float.POSITIVE_INFINITY;
+			float toX = Float.NEGATIVE_INFINITY, toY = Float.NEGATIVE_INFINITY;
+			for (Component component : groupMap.keySet())
+				if (groupMap.get(component) == groupIndex) {
+					fromX = min(component.getFromX(), fromX);
+					fromY = min(component.getFromY(), fromY);
+					toX = max(component.getToX(), toX);
+					toY = max(component.getToY(), toY);
+				}
+			if (fromX != Float.POSITIVE_INFINITY)
+				groups.add(new GroupComponent(fromX, fromY, toX, toY));
+		}
+		return groups;
+	}
+
 	private String text(List<String> lines) {
 		String text = "";
 		for (String line : lines)
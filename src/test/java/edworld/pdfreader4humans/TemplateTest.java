@@ -0,0 +1,44 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static edworld.pdfreader4humans.PDFReader.LINE_BREAK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class TemplateTest {
+	@Test
+	public void writeIndentedParts() throws IOException {
+		Template template = new Template("<box toY=\"${toY}\" a=\"${unknown}\">\n${content}\n</box>\n");
+		Template.Part[] parts = template.getParts(2);
+		assertSame(parts, template.getParts(2));
+		assertEquals(2, parts.length);
+		StringBuilder output = new StringBuilder();
+		BoxComponent box = new BoxComponent(1, 2, 3, 4.5f, 1, true, false, false, true);
+		parts[0].write(output, box);
+		output.append("|");
+		parts[1].write(output, box);
+		assertEquals("\t\t<box toY=\"4.5\" a=\"${unknown}\">" + LINE_BREAK + "|\t\t</box>" + LINE_BREAK, output
+				.toString());
+	}
+
+	@Test
+	public void fillFields() {
+		TextComponent text = new TextComponent("${fontName} $", 1, 2, 3, 4, "Times", 7);
+		assertEquals("${ text=${fontName} $ font=Times size=7.0 borders=${borders} ${content}", text
+				.output("${ text=${text} font=${fontName} size=${fontSize} borders=${borders} ${content}"));
+		assertSame(Template.get("pdfreader4humans-text.xml"), Template.get("pdfreader4humans-text.xml"));
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void keepDeprecatedHooks() {
+		TextComponent text = new TextComponent("a$b", 1, 2, 3, 4, "Times", 7);
+		assertEquals("<a$b/>", text.fillTemplate("<${text}/>", "text", text.getText()));
+		assertEquals("\t<page>" + LINE_BREAK + "${content}\t</page>" + LINE_BREAK, Template.indent(
+				"<page>\n${content}\n</page>\n", 1));
+	}
+}
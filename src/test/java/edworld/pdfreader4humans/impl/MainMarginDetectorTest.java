@@ -2,9 +2,11 @@
 package edworld.pdfreader4humans.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -254,6 +256,106 @@ public class MainMarginDetectorTest {
 		assertMargin(detected);
 	}
 
+	@Test
+	public void detectSameMarginsAsPairwiseJoining() {
+		Random random = new Random(5);
+		for (int round = 0; round < 100; round++) {
+			List<Component> components = new ArrayList<Component>();
+			int columns = 1 + random.nextInt(3);
+			for (int line = 0; line < 60; line++)
+				for (int column = 0; column < columns; column++)
+					if (random.nextInt(3) > 0) {
+						float fromX = column * 200 + random.nextInt(4) * 10, fromY = line * 12 + random.nextInt(2) * 3;
+						components.add(new TextComponent("", fromX, fromY, fromX + 30 + random.nextInt(160),
+								fromY + (random.nextInt(10) > 0 ? 8 : 14), "", 1));
+					}
+			for (int i = random.nextInt(10); i > 0; i--) {
+				float fromX = random.nextInt(600), fromY = random.nextInt(720);
+				if (random.nextBoolean())
+					components.add(new GridComponent(LINE, fromX, fromY, fromX + random.nextInt(300), fromY, 1));
+				else
+					components.add(new GroupComponent(fromX, fromY, fromX + random.nextInt(200), fromY
+							+ random.nextInt(200)));
+			}
+			Collections.shuffle(components, random);
+			Assert.assertEquals(pairwiseMargins(components).toString(), detector.detectMargins(components).toString());
+		}
+	}
+
+	@Test
+	public void detectMarginsBelowUnderlines() {
+		List<Component> components = new ArrayList<Component>();
+		components.add(new TextComponent("", 10, 10, 90, 18, "", 1));
+		components.add(new GridComponent(LINE, 10, 18.5f, 90, 18.5f, 1));
+		components.add(new TextComponent("", 10, 22, 60, 30, "", 1));
+		components.add(new TextComponent("", 50, 34, 120, 42, "", 1));
+		components.add(new TextComponent("", 200, 10, 260, 18, "", 1));
+		components.add(new TextComponent("", 200, 100, 260, 108, "", 1));
+		Assert.assertEquals("[margin :: 10.0, 10.0, 120.0, 42.0, margin :: 200.0, 10.0, 260.0, 108.0]", detector
+				.detectMargins(components).toString());
+	}
+
+	private List<MarginComponent> pairwiseMargins(List<? extends Component> components) {
+		List<Component> sortedComponents = new ArrayList<Component>(components);
+		Collections.sort(sortedComponents);
+		List<MarginComponent> margins = new ArrayList<MarginComponent>();
+		Map<Component, MarginComponent> map = new HashMap<Component, MarginComponent>();
+		for (Component component : sortedComponents)
+			if (map.get(component) == null && component instanceof TextComponent)
+				map.put(component, pairwiseMargin(component, sortedComponents, margins, map));
+		while (joinFirstIntersectingMargins(margins, map))
+			;
+		for (Component component : map.keySet())
+			if (map.get(component).getArea() == component.getArea())
+				margins.remove(map.get(component));
+		Collections.sort(margins);
+		return margins;
+	}
+
+	private MarginComponent pairwiseMargin(Component component, List<Component> components,
+			List<MarginComponent> margins, Map<Component, MarginComponent> map) {
+		for (MarginComponent margin : margins) {
+			Component nextLowerComponent = margin.nextLowerHorizontalComponent(margin.getToX(), margin.getFromX(),
+					components);
+			if (nextLowerComponent != null && nextLowerComponent.underlineOf(margin))
+				nextLowerComponent = nextLowerComponent.nextLowerHorizontalComponent(margin.getToX(), margin.getFromX(),
+						components);
+			if (component == nextLowerComponent) {
+				MarginComponent extendedMargin = margin.extended(component);
+				margins.remove(margin);
+				margins.add(extendedMargin);
+				replaceMargin(map, margin, extendedMargin);
+				return extendedMargin;
+			}
+		}
+		MarginComponent margin = new MarginComponent(component.getFromX(), component.getFromY(), component.getToX(),
+				component.getToY());
+		margins.add(margin);
+		return margin;
+	}
+
+	private boolean joinFirstIntersectingMargins(List<MarginComponent> margins, Map<Component, MarginComponent> map) {
+		for (MarginComponent marginA : margins)
+			for (MarginComponent marginB : margins)
+				if (marginA.intersects(marginB)) {
+					MarginComponent extendedMargin = marginA.extended(marginB);
+					margins.remove(marginA);
+					margins.remove(marginB);
+					margins.add(extendedMargin);
+					replaceMargin(map, marginA, extendedMargin);
+					replaceMargin(map, marginB, extendedMargin);
+					return true;
+				}
+		return false;
+	}
+
+	private void replaceMargin(Map<Component, MarginComponent> map, MarginComponent fromMargin,
+			MarginComponent toMargin) {
+		for (Component component : map.keySet())
+			if (map.get(component) == fromMargin)
+				map.put(component, toMargin);
+	}
+
 	private List<Component> gridComponents() {
 		for (Integer column : fromY.keySet())
 			addVertical(column, TEXT);
@@ -4,11 +4,16 @@ package edworld.pdfreader4humans.impl;
 import static org.hamcrest.CoreMatchers.hasItem;
 import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.junit.After;
@@ -16,6 +21,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import edworld.pdfreader4humans.GridComponent;
+import edworld.pdfreader4humans.ManagedPDFComponentLocator;
 import edworld.pdfreader4humans.PDFComponentLocator;
 import edworld.pdfreader4humans.PDFPage;
 import edworld.pdfreader4humans.TextComponent;
@@ -62,6 +68,52 @@ public class MainPDFComponentLocatorTest {
 		assertThat(items, hasItem("line :: 713.179, 797.3233, 713.179, 807.12506, 0.257pt"));
 	}
 
+	@Test
+	public void locateGridComponentsWithoutRendering() throws IOException {
+		final MainPDFComponentLocator contentStreamLocator = new MainPDFComponentLocator(
+				MainPDFComponentLocator.Mode.CONTENT_STREAM);
+		forEachTestcasePage(new PageCheck() {
+			public void check(String description, PDFPage page) throws IOException {
+				assertEquals(description, locator.locateGridComponents(page).toString(), contentStreamLocator
+						.locateGridComponents(page).toString());
+			}
+		}, contentStreamLocator);
+	}
+
+	@Test
+	public void locateComponentsInSinglePass() throws IOException {
+		final MainPDFComponentLocator singlePassLocator = new MainPDFComponentLocator(
+				MainPDFComponentLocator.Mode.SINGLE_PASS);
+		forEachTestcasePage(new PageCheck() {
+			public void check(String description, PDFPage page) throws IOException {
+				assertEquals(description, locator.locateGridComponents(page).toString(), singlePassLocator
+						.locateGridComponents(page).toString());
+				assertEquals(description, locator.locateTextComponents(page).toString(), singlePassLocator
+						.locateTextComponents(page).toString());
+			}
+		}, singlePassLocator);
+	}
+
+	private interface PageCheck {
+		void check(String description, PDFPage page) throws IOException;
+	}
+
+	private void forEachTestcasePage(PageCheck pageCheck, ManagedPDFComponentLocator otherLocator)
+			throws IOException {
+		for (int testcase = 1; testcase <= 8; testcase++) {
+			PDDocument testcaseDoc = PDFUtil.load(getClass().getResource("/testcase" + testcase + "/input.pdf"));
+			try {
+				for (int index = 0; index < testcaseDoc.getNumberOfPages(); index++)
+					pageCheck.check("testcase" + testcase + " page " + (index + 1), new PDFPage(index,
+							testcaseDoc.getPage(index), testcaseDoc));
+			} finally {
+				((ManagedPDFComponentLocator) locator).release(testcaseDoc);
+				otherLocator.release(testcaseDoc);
+				testcaseDoc.close();
+			}
+		}
+	}
+
 	@Test
 	public void locateTextComponents() throws IOException {
 		doc = PDFUtil.load(getClass().getResource("/testcase1/input.pdf"));
@@ -136,6 +188,58 @@ public class MainPDFComponentLocatorTest {
 				result);
 	}
 
+	@Test
+	public void cacheComponentsUntilDocumentIsReleased() throws IOException {
+		doc = PDFUtil.load(getClass().getResource("/testcase1/input.pdf"));
+		page1 = new PDFPage(0, doc.getPages().get(0), doc);
+		MainPDFComponentLocator cachingLocator = new MainPDFComponentLocator();
+		List<GridComponent> gridComponents = cachingLocator.locateGridComponents(page1);
+		assertSame(gridComponents, cachingLocator.locateGridComponents(page1));
+		assertEquals(233, cachingLocator.locateTextComponents(page1).size());
+		assertEquals(1, cachingLocator.getCache().getMisses());
+		assertEquals(2, cachingLocator.getCache().getHits());
+		assertEquals(172 + 233, cachingLocator.getCache().getWeight());
+		cachingLocator.release(doc);
+		assertEquals(0, cachingLocator.getCache().size());
+		assertEquals(0, cachingLocator.getCache().getWeight());
+	}
+
+	@Test
+	public void evictComponentsBeyondMaximum() throws IOException {
+		doc = PDFUtil.load(getClass().getResource("/testcase1/input.pdf"));
+		page1 = new PDFPage(0, doc.getPages().get(0), doc);
+		MainPDFComponentLocator boundedLocator = new MainPDFComponentLocator(MainPDFComponentLocator.Mode.RENDERING,
+				100);
+		assertEquals(locator.locateGridComponents(page1).toString(),
+				boundedLocator.locateGridComponents(page1).toString());
+		assertEquals(0, boundedLocator.getCache().size());
+		assertEquals(1, boundedLocator.getCache().getEvictions());
+		assertEquals(233, boundedLocator.locateTextComponents(page1).size());
+		assertEquals(2, boundedLocator.getCache().getMisses());
+	}
+
+	@Test
+	public void locatePageOnceForConcurrentRequests() throws Exception {
+		doc = PDFUtil.load(getClass().getResource("/testcase1/input.pdf"));
+		page1 = new PDFPage(0, doc.getPages().get(0), doc);
+		final MainPDFComponentLocator sharedLocator = new MainPDFComponentLocator();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<List<TextComponent>>> results = new ArrayList<Future<List<TextComponent>>>();
+			for (int i = 0; i < 4; i++)
+				results.add(executor.submit(new Callable<List<TextComponent>>() {
+					public List<TextComponent> call() throws IOException {
+						return sharedLocator.locateTextComponents(page1);
+					}
+				}));
+			for (Future<List<TextComponent>> result : results)
+				assertSame(results.get(0).get(), result.get());
+			assertEquals(1, sharedLocator.getCache().size());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
 	@After
 	public void tearDown() throws IOException {
 		if (doc != null) {
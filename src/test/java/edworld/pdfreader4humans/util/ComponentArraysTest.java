@@ -0,0 +1,63 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edworld.pdfreader4humans.BoxComponent;
+import edworld.pdfreader4humans.Component;
+import edworld.pdfreader4humans.TextComponent;
+
+public class ComponentArraysTest {
+	@Test
+	public void attachInSmartSortOrder() {
+		for (int round = 0; round < 50; round++) {
+			List<Component> expected = new ArrayList<Component>();
+			ComponentArrays expectedArrays = randomTree(new Random(round));
+			expectedArrays.attach(0, expectedArrays.size(), expected);
+			smartSortRecursively(expected);
+			List<Component> roots = new ArrayList<Component>();
+			ComponentArrays arrays = randomTree(new Random(round));
+			arrays.attachInReadingOrder(roots, 0, arrays.size());
+			assertEquals(describe(expected), describe(roots));
+		}
+	}
+
+	private ComponentArrays randomTree(Random random) {
+		ComponentArrays arrays = new ComponentArrays(0);
+		int count = 1 + random.nextInt(150);
+		for (int i = 0; i < count; i++) {
+			float fromX = random.nextInt(60) * 5, fromY = random.nextInt(40) * 10 + random.nextInt(3);
+			if (random.nextInt(6) == 0)
+				arrays.add(new BoxComponent(fromX, fromY, fromX + random.nextInt(200), fromY + random.nextInt(150), 1,
+						true, true, true, true));
+			else
+				arrays.add(new TextComponent("x" + i, fromX, fromY, fromX + random.nextInt(40), fromY + 6
+						+ random.nextInt(3), "Times", 7));
+			if (i > 0 && random.nextInt(3) == 0) {
+				int parent = random.nextInt(i);
+				if (arrays.getType(parent) == ComponentArrays.BOX)
+					arrays.setParent(i, parent);
+			}
+		}
+		return arrays;
+	}
+
+	private void smartSortRecursively(List<Component> components) {
+		Component.smartSort(components);
+		for (Component component : components)
+			smartSortRecursively(component.getChildren());
+	}
+
+	private String describe(List<Component> components) {
+		String description = "";
+		for (Component component : components)
+			description += component + describe(component.getChildren()) + ";";
+		return "[" + description + "]";
+	}
+}
@@ -0,0 +1,87 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edworld.pdfreader4humans.BoxComponent;
+import edworld.pdfreader4humans.Component;
+import edworld.pdfreader4humans.GridComponent;
+import edworld.pdfreader4humans.TextComponent;
+
+public class ContainerIndexTest {
+	private Random random = new Random(42);
+
+	@Test
+	public void findSameContainerAsLinearScan() {
+		for (float tolerance : new float[] { 0, 0.5F })
+			for (int round = 0; round < 20; round++) {
+				List<Component> containers = new ArrayList<Component>();
+				for (int i = 0; i < 300; i++) {
+					float fromX = coordinate(), fromY = coordinate();
+					BoxComponent box = new BoxComponent(fromX, fromY, fromX + size(), fromY + size(), 1, true, true,
+							true, true);
+					containers.add(box);
+					if (random.nextInt(10) == 0)
+						containers.add(new BoxComponent(box.getFromX(), box.getFromY(), box.getToX(), box.getToY(), 1,
+								true, true, true, true));
+				}
+				ContainerIndex<Component> index = new ContainerIndex<Component>(containers, tolerance);
+				for (int i = 0; i < 500; i++) {
+					float fromX = coordinate(), fromY = coordinate();
+					Component component = random.nextBoolean()
+							? new TextComponent("x", fromX, fromY, fromX + size() / 4, fromY + 5, "Times", 7)
+							: new GridComponent("line", fromX, fromY, fromX + size() / 4, fromY, 1);
+					assertSame(linearContainer(component, containers, tolerance), index.findContainer(component));
+				}
+				for (Component container : containers)
+					assertSame(linearContainer(container, containers, tolerance), index.findContainer(container));
+			}
+	}
+
+	@Test
+	public void findContainerInArrayRange() {
+		List<Component> components = new ArrayList<Component>();
+		for (int i = 0; i < 400; i++) {
+			float fromX = coordinate(), fromY = coordinate();
+			if (i % 2 == 0)
+				components.add(new BoxComponent(fromX, fromY, fromX + size(), fromY + size(), 1, true, true, true,
+						true));
+			else
+				components.add(new TextComponent("x", fromX, fromY, fromX + size() / 4, fromY + 5, "Times", 7));
+		}
+		ComponentArrays arrays = new ComponentArrays(0);
+		arrays.addAll(components);
+		List<Component> containers = components.subList(100, 300);
+		ContainerIndex<Component> index = new ContainerIndex<Component>(arrays, 100, 300, 0.5F);
+		for (int i = 0; i < components.size(); i++) {
+			Component container = linearContainer(components.get(i), containers, 0.5F);
+			int containerIndex = index.findContainer(i);
+			assertSame(container, containerIndex < 0 ? null : arrays.get(containerIndex));
+		}
+	}
+
+	private Component linearContainer(Component component, List<Component> containers, float tolerance) {
+		Component container = null;
+		float area = Float.POSITIVE_INFINITY;
+		for (Component possibleContainer : containers)
+			if (possibleContainer.contains(component, tolerance) && possibleContainer.getArea() < area) {
+				container = possibleContainer;
+				area = possibleContainer.getArea();
+			}
+		return container;
+	}
+
+	private float coordinate() {
+		return random.nextInt(400) + random.nextInt(4) * 0.25F;
+	}
+
+	private float size() {
+		return random.nextInt(10) == 0 ? 300 : random.nextInt(60) + 0.5F;
+	}
+}
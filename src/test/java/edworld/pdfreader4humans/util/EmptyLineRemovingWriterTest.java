@@ -0,0 +1,28 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class EmptyLineRemovingWriterTest {
+	@Test
+	public void removeEmptyLines() throws IOException {
+		assertRemovedLikeReplaceAll("\n", "a\n\nb\n\n\nc\n\n\n\nd\n");
+		assertRemovedLikeReplaceAll("\r\n", "a\r\n\r\nb\r\r\n\r\n\r\nc\n\r\n\r\n");
+		assertRemovedLikeReplaceAll("\r\n", "\r\n\r");
+	}
+
+	private void assertRemovedLikeReplaceAll(String lineBreak, String text) throws IOException {
+		StringWriter result = new StringWriter();
+		EmptyLineRemovingWriter writer = new EmptyLineRemovingWriter(result, lineBreak);
+		writer.write(text.substring(0, 3));
+		for (char c : text.substring(3).toCharArray())
+			writer.write(c);
+		writer.finish();
+		assertEquals(text.replaceAll(lineBreak + lineBreak, lineBreak), result.toString());
+	}
+}
@@ -0,0 +1,58 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class JSONWriterTest {
+	@Test
+	public void writeNestedValues() throws IOException {
+		StringWriter output = new StringWriter();
+		JSONWriter json = new JSONWriter(output, false, "\n");
+		json.beginObject().name("a").value(1).name("b").beginArray().value("x").beginObject().endObject().endArray();
+		json.name("c").beginArray().endArray().name("d").value((String) null).endObject();
+		assertEquals("{\n\t\"a\": 1,\n\t\"b\": [\n\t\t\"x\",\n\t\t{}\n\t],\n\t\"c\": [],\n\t\"d\": null\n}",
+				output.toString());
+		output = new StringWriter();
+		json = new JSONWriter(output, true, "\n");
+		json.beginArray().value(1).beginArray().value(2).endArray().beginObject().name("e").value(3f).endObject();
+		json.endArray();
+		assertEquals("[1,[2],{\"e\":3.0}]", output.toString());
+	}
+
+	@Test
+	public void escapeStrings() throws IOException {
+		StringWriter output = new StringWriter();
+		new JSONWriter(output, true, "\n").value("a\"b\\c\nd\te\u0001fç");
+		assertEquals("\"a\\\"b\\\\c\\nd\\te\\u0001fç\"", output.toString());
+	}
+
+	@Test
+	public void writeFloats() throws IOException {
+		assertEquals("72.0", toJSON(72f));
+		assertEquals("-12.5", toJSON(-12.5f));
+		assertEquals("0.1", toJSON(0.1f));
+		assertEquals("595.276", toJSON(595.276f));
+		assertEquals("-0.0", toJSON(-0f));
+		assertEquals("1.0E9", toJSON(1e9f));
+		assertEquals("null", toJSON(Float.NaN));
+		Random random = new Random(1);
+		for (int i = 0; i < 100000; i++) {
+			float value = i % 2 == 0 ? (random.nextFloat() - 0.5f) * 2000 : Math.round(random.nextFloat() * 1e6f) / 1000f;
+			assertEquals(value, Float.parseFloat(toJSON(value)), 0);
+			assertTrue(Float.toString(value).length() >= toJSON(value).length());
+		}
+	}
+
+	private String toJSON(float value) throws IOException {
+		StringWriter output = new StringWriter();
+		new JSONWriter(output, true, "\n").value(value);
+		return output.toString();
+	}
+}
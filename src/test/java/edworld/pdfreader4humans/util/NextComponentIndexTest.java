@@ -0,0 +1,38 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edworld.pdfreader4humans.Component;
+import edworld.pdfreader4humans.GridComponent;
+
+public class NextComponentIndexTest {
+	private Random random = new Random(9);
+
+	@Test
+	public void answerAsComponentScans() {
+		for (int round = 0; round < 50; round++) {
+			List<Component> components = new ArrayList<Component>();
+			for (int i = random.nextInt(200); i >= 0; i--) {
+				float fromX = random.nextInt(50) * 10, fromY = random.nextInt(100) * 5;
+				components.add(new GridComponent("line", fromX, fromY, fromX + random.nextInt(300), fromY
+						+ random.nextInt(3), 1));
+			}
+			List<Component> horizontalComponents = Component.horizontal(components);
+			NextComponentIndex<Component> index = new NextComponentIndex<Component>(horizontalComponents);
+			for (Component component : components) {
+				float maxLeft = random.nextInt(500), minRight = random.nextInt(500);
+				assertSame(component.nextUpperHorizontalComponent(maxLeft, minRight, horizontalComponents),
+						index.nextUpperHorizontalComponent(component, maxLeft, minRight));
+				assertSame(component.nextLowerHorizontalComponent(maxLeft, minRight, horizontalComponents),
+						index.nextLowerHorizontalComponent(component, maxLeft, minRight));
+			}
+		}
+	}
+}
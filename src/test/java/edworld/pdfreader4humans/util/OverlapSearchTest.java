@@ -0,0 +1,62 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edworld.pdfreader4humans.Component;
+import edworld.pdfreader4humans.GridComponent;
+
+public class OverlapSearchTest {
+	private Random random = new Random(11);
+
+	@Test
+	public void findSamePairsAsNestedLoop() {
+		for (int round = 0; round < 30; round++) {
+			List<Component> components = new ArrayList<Component>();
+			for (int i = 0; i < 300; i++) {
+				float x = random.nextInt(500), y = random.nextInt(500);
+				switch (random.nextInt(4)) {
+				case 0:
+					components.add(new GridComponent("line", 0, y, 500, y, 1));
+					break;
+				case 1:
+					components.add(new GridComponent("line", x, 0, x, 500, 1));
+					break;
+				case 2:
+					components.add(new GridComponent("line", x, y, x - random.nextInt(50), y, 1));
+					break;
+				default:
+					components.add(new GridComponent("line", x, y, x + random.nextInt(80), y + random.nextInt(80), 1));
+				}
+			}
+			components.add(new GridComponent("line", Float.NaN, 10, 20, 10, 1));
+			assertEquals(nestedLoopPairs(components).toString(), searchedPairs(components).toString());
+		}
+	}
+
+	private List<String> searchedPairs(List<Component> components) {
+		final List<String> pairs = new ArrayList<String>();
+		OverlapSearch.INTERSECTION.forEachOverlappingPair(components, new OverlapSearch.PairHandler() {
+			@Override
+			public void pair(int index1, int index2) {
+				pairs.add(index1 + "-" + index2);
+			}
+		});
+		return pairs;
+	}
+
+	private List<String> nestedLoopPairs(List<Component> components) {
+		List<String> pairs = new ArrayList<String>();
+		for (int i = 0; i < components.size(); i++)
+			for (int j = i + 1; j < components.size(); j++)
+				if (components.get(i).intersects(components.get(j)))
+					pairs.add(i + "-" + j);
+		return pairs;
+	}
+}
@@ -0,0 +1,78 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edworld.pdfreader4humans.PDFPage;
+
+public class PageCacheTest {
+	private PDDocument doc1;
+	private PDDocument doc2;
+	private PageCache<String> cache;
+
+	@Before
+	public void setUp() {
+		doc1 = new PDDocument();
+		doc2 = new PDDocument();
+		cache = new PageCache<String>(10) {
+			@Override
+			protected long weight(String value) {
+				return value.length();
+			}
+		};
+	}
+
+	@Test
+	public void evictLeastRecentlyUsedPages() {
+		PDFPage page1 = new PDFPage(0, null, doc1);
+		PDFPage page2 = new PDFPage(1, null, doc1);
+		PDFPage page3 = new PDFPage(2, null, doc1);
+		cache.put(page1, "abcd");
+		cache.put(page2, "efgh");
+		assertEquals("abcd", cache.get(page1));
+		cache.put(page3, "ijkl");
+		assertNull(cache.get(page2));
+		assertEquals("abcd", cache.get(page1));
+		assertEquals("ijkl", cache.get(page3));
+		assertEquals(8, cache.getWeight());
+		assertEquals(3, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.getEvictions());
+		cache.put(page1, "abcdefghijk");
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getWeight());
+	}
+
+	@Test
+	public void comparePagesByIdentity() {
+		cache.put(new PDFPage(0, null, doc1), "abc");
+		assertNull(cache.get(new PDFPage(0, null, doc1)));
+	}
+
+	@Test
+	public void releasePagesOfDocument() {
+		PDFPage page1 = new PDFPage(0, null, doc1);
+		PDFPage page2 = new PDFPage(0, null, doc2);
+		cache.put(page1, "abc");
+		cache.put(page2, "def");
+		cache.release(doc1);
+		assertNull(cache.get(page1));
+		assertEquals("def", cache.get(page2));
+		assertEquals(3, cache.getWeight());
+		assertEquals(0, cache.getEvictions());
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		doc1.close();
+		doc2.close();
+	}
+}
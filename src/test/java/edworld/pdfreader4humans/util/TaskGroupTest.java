@@ -0,0 +1,50 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class TaskGroupTest {
+	@Test
+	public void waitForRunningTasksWhenCancelled() throws InterruptedException {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		final CountDownLatch started = new CountDownLatch(1);
+		final AtomicBoolean finished = new AtomicBoolean();
+		final AtomicBoolean queuedTaskRan = new AtomicBoolean();
+		TaskGroup<Void> tasks = new TaskGroup<Void>(executor);
+		tasks.submit(new Callable<Void>() {
+			public Void call() throws InterruptedException {
+				started.countDown();
+				try {
+					Thread.sleep(60000);
+				} catch (InterruptedException e) {
+					Thread.sleep(200);
+				}
+				finished.set(true);
+				return null;
+			}
+		});
+		tasks.submit(new Callable<Void>() {
+			public Void call() {
+				queuedTaskRan.set(true);
+				return null;
+			}
+		});
+		started.await();
+		tasks.cancelAndAwait();
+		assertTrue(finished.get());
+		assertTrue(tasks.getFutures().get(1).isCancelled());
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.MINUTES);
+		assertFalse(queuedTaskRan.get());
+	}
+}
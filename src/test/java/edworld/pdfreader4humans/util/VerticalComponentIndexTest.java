@@ -0,0 +1,105 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edworld.pdfreader4humans.Component;
+import edworld.pdfreader4humans.GridComponent;
+import edworld.pdfreader4humans.TextComponent;
+
+public class VerticalComponentIndexTest {
+	private Random random = new Random(3);
+
+	@Test
+	public void answerAsLinearScans() {
+		for (int round = 0; round < 50; round++) {
+			List<Component> components = new ArrayList<Component>();
+			for (int i = 0; i < 300; i++) {
+				float x = random.nextInt(12) * 50, fromY = random.nextInt(40) * 10;
+				components.add(new GridComponent("line", x, fromY, x + 1, fromY + 10 + random.nextInt(3) * 5, 1));
+				if (random.nextInt(3) == 0)
+					components.add(new GridComponent("line", x, fromY, x + random.nextInt(500), fromY + 1, 1));
+			}
+			List<Component> verticalComponents = Component.vertical(components);
+			VerticalComponentIndex<Component> index = new VerticalComponentIndex<Component>(verticalComponents);
+			for (Component component : components)
+				if (component.getWidth() > component.getHeight())
+					assertEquals(linearIntersecting(component, verticalComponents), index.intersecting(component));
+				else {
+					Component copy = new GridComponent("line", component.getFromX(), component.getFromY(),
+							component.getToX(), component.getToY(), 1);
+					for (Component vertical : new Component[] { component, copy }) {
+						assertEquals(linearTransitiveTop(vertical, verticalComponents), index.transitiveTop(vertical), 0);
+						assertEquals(linearTransitiveBottom(vertical, verticalComponents),
+								index.transitiveBottom(vertical), 0);
+					}
+				}
+		}
+	}
+
+	@Test
+	public void findCrossedTextsAsLinearScan() {
+		for (int round = 0; round < 50; round++) {
+			List<Component> components = new ArrayList<Component>();
+			for (int i = 0; i < 100; i++) {
+				float x = random.nextInt(60) * 10, fromY = random.nextInt(40) * 10;
+				components.add(new GridComponent("line", x, fromY, x + random.nextInt(3), fromY + 10 + random.nextInt(60), 1));
+			}
+			List<Component> verticalComponents = Component.vertical(components);
+			VerticalComponentIndex<Component> index = new VerticalComponentIndex<Component>(verticalComponents);
+			for (int i = 0; i < 300; i++) {
+				float fromX = random.nextInt(600), fromY = random.nextInt(400);
+				TextComponent text = new TextComponent("text", fromX, fromY, fromX + random.nextInt(100),
+						fromY + random.nextInt(15), "Times", 10);
+				boolean crossed = false;
+				for (Component separator : verticalComponents)
+					crossed |= separator.intersects(text) && !separator.contains(text);
+				assertEquals(crossed, index.crosses(text.getFromX(), text.getFromY(), text.getToX(), text.getToY()));
+			}
+		}
+	}
+
+	private List<Component> linearIntersecting(Component component, List<Component> verticalComponents) {
+		List<Component> intersecting = new ArrayList<Component>();
+		for (Component verticalComponent : verticalComponents)
+			if (component.intersects(verticalComponent))
+				intersecting.add(verticalComponent);
+		return intersecting;
+	}
+
+	private float linearTransitiveTop(Component component, List<Component> verticalComponents) {
+		float top = component.getFromY();
+		for (Component next = component; next != null;) {
+			top = next.getFromY();
+			Component current = next;
+			next = null;
+			for (Component candidate : verticalComponents)
+				if (current.verticalExtension(candidate) && candidate.getFromY() < current.getFromY()) {
+					next = candidate;
+					break;
+				}
+		}
+		return top;
+	}
+
+	private float linearTransitiveBottom(Component component, List<Component> verticalComponents) {
+		float bottom = component.getToY();
+		for (Component next = component; next != null;) {
+			bottom = next.getToY();
+			Component current = next;
+			next = null;
+			for (Component candidate : verticalComponents)
+				if (current.verticalExtension(candidate) && candidate.getFromY() > current.getFromY()) {
+					next = candidate;
+					break;
+				}
+		}
+		return bottom;
+	}
+}